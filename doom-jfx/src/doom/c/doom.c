@@ -1,11 +1,35 @@
 #include <jni.h>
 #include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
 #include "../../../../doomsrc/d_main.h"
+#include "../../../../doomsrc/m_argv.h"
+
+// Passes the Java command line to the game as myargc/myargv, with a program name in front.
+static void setArgs(JNIEnv *env, jobjectArray args)
+{
+    int count = args == NULL ? 0 : (*env)->GetArrayLength(env, args);
+    int i;
+
+    myargv = malloc((count + 2) * sizeof(char*));
+    myargv[0] = "doom";
+    for (i = 0; i < count; i++)
+    {
+        jstring arg = (*env)->GetObjectArrayElement(env, args, i);
+        const char *utf = (*env)->GetStringUTFChars(env, arg, NULL);
+        myargv[i + 1] = strdup(utf);
+        (*env)->ReleaseStringUTFChars(env, arg, utf);
+        (*env)->DeleteLocalRef(env, arg);
+    }
+    myargv[count + 1] = NULL;
+    myargc = count + 1;
+}
 
 JNIEXPORT void JNICALL
-Java_com_dpforge_doom_DoomMain_start(JNIEnv *env, jobject obj)
+Java_com_dpforge_doom_DoomMain_start(JNIEnv *env, jobject obj, jobjectArray args)
 {
     printf("Starting doom\n");
+    setArgs(env, args);
     D_DoomMain();
     return;
-}
\ No newline at end of file
+}
@@ -0,0 +1,76 @@
+package com.dpforge.doom;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lock-free single-producer/single-consumer ring of audio bytes.
+ * The game thread writes mixed chunks, the audio output thread reads them.
+ */
+class AudioRing {
+
+    private final byte[] data;
+    private final int mask;
+    // most bytes the ring holds, the array is rounded up to a power of two but is never filled beyond this
+    private final int limit;
+
+    // positions grow monotonically, the index in data is position & mask
+    private volatile long writePosition;
+    private volatile long readPosition;
+
+    AudioRing(int limit) {
+        int capacity = Integer.highestOneBit(Math.max(1, limit - 1)) << 1;
+        data = new byte[capacity];
+        mask = capacity - 1;
+        this.limit = limit;
+    }
+
+    int capacity() {
+        return limit;
+    }
+
+    int available() {
+        return (int) (writePosition - readPosition);
+    }
+
+    int free() {
+        return limit - available();
+    }
+
+    /**
+     * Copies {@code length} bytes from the start of {@code source}. Nothing is written if there is not enough
+     * free space for the whole chunk.
+     *
+     * @return true if the chunk was written
+     */
+    boolean write(ByteBuffer source, int length) {
+        long position = writePosition;
+        if (limit - (int) (position - readPosition) < length) {
+            return false;
+        }
+        int start = (int) position & mask;
+        int firstPart = Math.min(length, data.length - start);
+        source.get(0, data, start, firstPart);
+        source.get(firstPart, data, 0, length - firstPart);
+        writePosition = position + length;
+        return true;
+    }
+
+    /**
+     * Copies up to {@code maxLength} bytes into {@code target}.
+     *
+     * @return number of bytes copied, 0 if the ring is empty
+     */
+    int read(byte[] target, int maxLength) {
+        long position = readPosition;
+        int length = Math.min(maxLength, (int) (writePosition - position));
+        if (length <= 0) {
+            return 0;
+        }
+        int start = (int) position & mask;
+        int firstPart = Math.min(length, data.length - start);
+        System.arraycopy(data, start, target, 0, firstPart);
+        System.arraycopy(data, 0, target, firstPart, length - firstPart);
+        readPosition = position + length;
+        return length;
+    }
+}
@@ -6,53 +6,94 @@ import javax.swing.SwingUtilities;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
-import java.awt.image.BufferedImage;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.RenderingHints;
+import java.awt.image.VolatileImage;
+import java.util.Locale;
 
-class DoomDisplay extends JPanel {
+class DoomDisplay extends JPanel implements FrameSink {
 
-    private final int scale = 2;
+    // initial window size is the screen size multiplied by this factor
+    private final int scale = Integer.getInteger("doom.scale", 2);
+    private final DoomScaling scaling = DoomScaling.valueOf(
+            System.getProperty("doom.scaling", DoomScaling.NEAREST.name()).toUpperCase(Locale.ROOT)
+    );
 
-    private final BufferedImage screenBuffer;
+    private final FrameExchange frames;
     private final int width;
     private final int height;
 
-    final DoomKeyboard keyboard = new DoomKeyboard();
+    // accelerated copy of the latest frame, scaled to the panel with a single drawImage
+    private VolatileImage surface;
 
-    DoomDisplay(int width, int height, BufferedImage screenBuffer) {
+    private final DoomKeyboard keyboard;
+    private final DoomMouse mouse;
+
+    DoomDisplay(int width, int height, FrameExchange frames, InputRing input) {
         this.width = width;
         this.height = height;
-        this.screenBuffer = screenBuffer;
+        this.frames = frames;
+        this.keyboard = new DoomKeyboard(input);
+        this.mouse = new DoomMouse(input);
+        setBackground(Color.BLACK);
     }
 
-    void start() {
+    @Override
+    public void start() {
         SwingUtilities.invokeLater(() -> {
             setPreferredSize(new Dimension(scale * width, scale * height));
 
             JFrame frame = new JFrame("Java DOOM");
             frame.setSize(scale * width, scale * height);
             frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-            frame.setResizable(false);
+            frame.setResizable(true);
             frame.setVisible(true);
             frame.setContentPane(this);
             frame.pack();
 
             frame.addKeyListener(keyboard);
+            addMouseListener(mouse);
+            addMouseMotionListener(mouse);
         });
     }
 
-    void onFinishUpdate() {
+    @Override
+    public void onFinishUpdate() {
         SwingUtilities.invokeLater(this::repaint);
     }
 
     @Override
     protected void paintComponent(Graphics g) {
-        synchronized (screenBuffer) {
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    g.setColor(new Color(screenBuffer.getRGB(x, y)));
-                    g.fillRect(x * scale, y * scale, scale, scale);
-                }
-            }
+        super.paintComponent(g);
+
+        float factor = Math.min(1f * getWidth() / width, 1f * getHeight() / height);
+        if (scaling == DoomScaling.INTEGER) {
+            factor = Math.max(1, (int) factor);
         }
+        int targetWidth = Math.round(width * factor);
+        int targetHeight = Math.round(height * factor);
+        int targetX = (getWidth() - targetWidth) / 2;
+        int targetY = (getHeight() - targetHeight) / 2;
+
+        Graphics2D g2 = (Graphics2D) g;
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        do {
+            GraphicsConfiguration gc = getGraphicsConfiguration();
+            if (surface == null || surface.validate(gc) == VolatileImage.IMAGE_INCOMPATIBLE) {
+                surface = gc.createCompatibleVolatileImage(width, height);
+            }
+            Graphics2D sg = surface.createGraphics();
+            sg.drawImage(frames.acquire(), 0, 0, null);
+            sg.dispose();
+            g2.drawImage(surface, targetX, targetY, targetWidth, targetHeight, null);
+        } while (surface.contentsLost());
     }
 }
+
+enum DoomScaling {
+    // fit the window keeping the aspect ratio, any factor
+    NEAREST,
+    // fit the window keeping the aspect ratio, whole factors only
+    INTEGER
+}
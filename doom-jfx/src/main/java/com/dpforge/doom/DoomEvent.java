@@ -1,8 +1,43 @@
 package com.dpforge.doom;
 
-record DoomEvent(DoomEventType type, int code) {}
+/**
+ * Input events are packed into a single int so they can be queued and passed to the native side without
+ * allocation. The type takes the upper 4 bits and matches evtype_t from d_event.h, the rest is event data.
+ */
+final class DoomEvent {
 
-enum DoomEventType {
-    KEY_DOWN,
-    KEY_UP
+    static final int KEY_DOWN = 0;
+    static final int KEY_UP = 1;
+    static final int MOUSE = 2;
+
+    private static final int TYPE_SHIFT = 28;
+    private static final int KEY_MASK = (1 << TYPE_SHIFT) - 1;
+    // mouse motion is sent as two signed 12 bit values
+    private static final int MOTION_BITS = 12;
+    private static final int MOTION_MASK = (1 << MOTION_BITS) - 1;
+    private static final int MOTION_MAX = (1 << (MOTION_BITS - 1)) - 1;
+    private static final int BUTTONS_SHIFT = 2 * MOTION_BITS;
+
+    private DoomEvent() {
+    }
+
+    static int key(int type, int code) {
+        return (type << TYPE_SHIFT) | (code & KEY_MASK);
+    }
+
+    /**
+     * @param buttons bit 0 - left, bit 1 - middle, bit 2 - right
+     * @param dx      horizontal motion, positive to the right
+     * @param dy      vertical motion, positive upwards
+     */
+    static int mouse(int buttons, int dx, int dy) {
+        return (MOUSE << TYPE_SHIFT)
+                | ((buttons & 0b111) << BUTTONS_SHIFT)
+                | ((clampMotion(dx) & MOTION_MASK) << MOTION_BITS)
+                | (clampMotion(dy) & MOTION_MASK);
+    }
+
+    private static int clampMotion(int value) {
+        return Math.max(-MOTION_MAX, Math.min(MOTION_MAX, value));
+    }
 }
@@ -2,18 +2,13 @@ package com.dpforge.doom;
 
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-import java.util.ArrayList;
-import java.util.List;
 
 class DoomKeyboard implements KeyListener {
 
-    private final List<DoomEvent> buffer = new ArrayList<>();
+    private final InputRing input;
 
-    void getAllCodes(List<DoomEvent> codes) {
-        synchronized (buffer) {
-            codes.addAll(buffer);
-            buffer.clear();
-        }
+    DoomKeyboard(InputRing input) {
+        this.input = input;
     }
 
     @Override
@@ -25,9 +20,7 @@ class DoomKeyboard implements KeyListener {
     public void keyPressed(KeyEvent e) {
         int code = getCode(e.getKeyCode());
         if (code > 0) {
-            synchronized (buffer) {
-                buffer.add(new DoomEvent(DoomEventType.KEY_DOWN, code));
-            }
+            input.add(DoomEvent.key(DoomEvent.KEY_DOWN, code));
         }
     }
 
@@ -35,9 +28,7 @@ class DoomKeyboard implements KeyListener {
     public void keyReleased(KeyEvent e) {
         int code = getCode(e.getKeyCode());
         if (code > 0) {
-            synchronized (buffer) {
-                buffer.add(new DoomEvent(DoomEventType.KEY_UP, code));
-            }
+            input.add(DoomEvent.key(DoomEvent.KEY_UP, code));
         }
     }
 
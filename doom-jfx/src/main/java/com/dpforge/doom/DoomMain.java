@@ -1,7 +1,14 @@
 package com.dpforge.doom;
 
 public class DoomMain {
-    public native void start();
+
+    // run without a window, e.g. for benchmarks on CI
+    static final boolean HEADLESS = Boolean.getBoolean("doom.headless");
+
+    /**
+     * @param args command line of the game, e.g. {@code -timedemo demo1}
+     */
+    public native void start(String[] args);
 
     static {
         System.loadLibrary("jnidoom");
@@ -9,6 +16,9 @@ public class DoomMain {
     }
 
     public static void main(String[] args) {
-        new DoomMain().start();
+        if (HEADLESS) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        new DoomMain().start(args);
     }
 }
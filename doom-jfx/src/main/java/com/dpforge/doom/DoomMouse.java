@@ -0,0 +1,82 @@
+package com.dpforge.doom;
+
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+
+class DoomMouse implements MouseListener, MouseMotionListener {
+
+    // DOOM expects larger deltas than a window produces, the X11 port shifts them the same way
+    private static final int MOTION_SHIFT = 2;
+
+    private final InputRing input;
+
+    private int buttons;
+    private boolean hasPosition;
+    private int lastX;
+    private int lastY;
+
+    DoomMouse(InputRing input) {
+        this.input = input;
+    }
+
+    @Override
+    public void mouseClicked(MouseEvent e) {
+        // do nothing
+    }
+
+    @Override
+    public void mousePressed(MouseEvent e) {
+        buttons |= getButton(e.getButton());
+        input.add(DoomEvent.mouse(buttons, 0, 0));
+    }
+
+    @Override
+    public void mouseReleased(MouseEvent e) {
+        buttons &= ~getButton(e.getButton());
+        input.add(DoomEvent.mouse(buttons, 0, 0));
+    }
+
+    @Override
+    public void mouseEntered(MouseEvent e) {
+        hasPosition = false;
+    }
+
+    @Override
+    public void mouseExited(MouseEvent e) {
+        hasPosition = false;
+    }
+
+    @Override
+    public void mouseDragged(MouseEvent e) {
+        onMotion(e);
+    }
+
+    @Override
+    public void mouseMoved(MouseEvent e) {
+        onMotion(e);
+    }
+
+    private void onMotion(MouseEvent e) {
+        if (hasPosition) {
+            int dx = (e.getX() - lastX) << MOTION_SHIFT;
+            // window Y grows downwards, DOOM's grows upwards
+            int dy = (lastY - e.getY()) << MOTION_SHIFT;
+            if (dx != 0 || dy != 0) {
+                input.add(DoomEvent.mouse(buttons, dx, dy));
+            }
+        }
+        hasPosition = true;
+        lastX = e.getX();
+        lastY = e.getY();
+    }
+
+    private static int getButton(int button) {
+        return switch (button) {
+            case MouseEvent.BUTTON1 -> 0b001;
+            case MouseEvent.BUTTON2 -> 0b010;
+            case MouseEvent.BUTTON3 -> 0b100;
+            default -> 0;
+        };
+    }
+}
@@ -6,47 +6,113 @@ import javax.sound.sampled.DataLine;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.SourceDataLine;
 import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 public class DoomSound {
 
-    private static byte[] audioBytes;
+    private static final int SAMPLE_RATE = 11025;
+    // 16 bit stereo
+    private static final int FRAME_SIZE = 4;
+    // how much audio may be queued ahead of the hardware
+    private static final int TARGET_LATENCY_MS = Integer.getInteger("doom.audio.latency", 100);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
     private static SourceDataLine line;
+    private static AudioRing ring;
 
     private static ByteBuffer mixBuffer;
 
+    // frames the game didn't mix because the ring had no room for a chunk
+    private static volatile long skippedMixes;
+    // chunks the game submitted while the ring was full
+    private static volatile long droppedChunks;
+    // times the line ran out of data
+    private static volatile long underruns;
+
     public native static ByteBuffer getMixBuffer();
 
     public static void initSound() {
         mixBuffer = getMixBuffer();
+        if (DoomMain.HEADLESS) {
+            return;
+        }
 
-        AudioFormat format = new AudioFormat(11025, 16, 2, true, false);
-        audioBytes = new byte[mixBuffer.limit()];
+        AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 2, true, false);
+        int chunkSize = mixBuffer.limit();
+        int latencyBytes = SAMPLE_RATE * FRAME_SIZE * TARGET_LATENCY_MS / 1000 / FRAME_SIZE * FRAME_SIZE;
+        // the line buffer and the ring share the latency, each of them holds at least one chunk
+        int lineBufferSize = Math.max(latencyBytes / 2 / FRAME_SIZE * FRAME_SIZE, chunkSize);
 
         try {
             // Get a SourceDataLine for playback
             DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
             line = (SourceDataLine) AudioSystem.getLine(info);
-            line.open(format);
+            line.open(format, lineBufferSize);
             line.start();
         } catch (LineUnavailableException e) {
             throw new RuntimeException(e);
         }
+        // the line may not get the size asked for
+        ring = new AudioRing(Math.max(latencyBytes - line.getBufferSize(), chunkSize));
+
+        Thread output = new Thread(DoomSound::runOutput, "doom-audio");
+        output.setDaemon(true);
+        output.start();
+    }
+
+    /**
+     * Called by the game thread before it mixes a chunk. While the ring has no room the game doesn't mix,
+     * so its channels wait for the output instead of skipping the audio of the dropped chunks.
+     */
+    public static boolean canSubmit() {
+        if (ring == null || ring.free() >= mixBuffer.limit()) {
+            return true;
+        }
+        skippedMixes++;
+        return false;
     }
 
+    /**
+     * Called by the game thread after each mix. Never blocks: if the output is too far behind the chunk
+     * is dropped, which only happens when the chunk was mixed without asking {@link #canSubmit()}.
+     */
     public static void submitSound() {
-        try {
-            mixBuffer.position(0);
-            mixBuffer.get(audioBytes);
+        long start = System.nanoTime();
+        if (ring != null && !ring.write(mixBuffer, mixBuffer.limit())) {
+            droppedChunks++;
+        }
+        DoomStats.submitSound.add(System.nanoTime() - start);
+    }
 
-            // Write audio data
-            line.write(audioBytes, 0, audioBytes.length);
+    static long skippedMixes() {
+        return skippedMixes;
+    }
 
-            // Wait for playback to finish
-            line.drain();
-            //line.close();
+    static long droppedChunks() {
+        return droppedChunks;
+    }
+
+    static long underruns() {
+        return underruns;
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    private static void runOutput() {
+        byte[] chunk = new byte[line.getBufferSize()];
+        boolean starving = false;
+        while (true) {
+            // only write what the line accepts right away, so write() does not block either
+            int length = ring.read(chunk, line.available() / FRAME_SIZE * FRAME_SIZE);
+            if (length > 0) {
+                line.write(chunk, 0, length);
+                starving = false;
+                continue;
+            }
+            if (!starving && line.available() >= line.getBufferSize()) {
+                underruns++;
+                starving = true;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
         }
     }
 }
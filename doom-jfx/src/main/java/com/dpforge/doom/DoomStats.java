@@ -0,0 +1,53 @@
+package com.dpforge.doom;
+
+/**
+ * Timings of the Java side of every native callback and of whole frames.
+ */
+final class DoomStats {
+
+    static final TimingCounter startFrame = new TimingCounter("startFrame");
+    static final TimingCounter finishUpdate = new TimingCounter("finishUpdate");
+    static final TimingCounter setPalette = new TimingCounter("setPalette");
+    static final TimingCounter submitSound = new TimingCounter("submitSound");
+    static final TimingCounter conversion = new TimingCounter("frame conversion");
+    // time between two consecutive finishUpdate calls
+    static final TimingCounter frameTime = new TimingCounter("frame time");
+
+    private static long firstFrameNanos;
+    private static long lastFrameNanos;
+    private static int firstFrameTic;
+    private static int lastFrameTic;
+
+    private DoomStats() {
+    }
+
+    static void onFrame(int gameTic) {
+        long now = System.nanoTime();
+        if (lastFrameNanos == 0) {
+            firstFrameNanos = now;
+            firstFrameTic = gameTic;
+        } else {
+            frameTime.add(now - lastFrameNanos);
+        }
+        lastFrameNanos = now;
+        lastFrameTic = gameTic;
+    }
+
+    static String report(FrameExchange frames) {
+        double seconds = (lastFrameNanos - firstFrameNanos) / 1e9;
+        int tics = lastFrameTic - firstFrameTic;
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%d tics in %.2f s: %.1f tics/s, %.1f frames/s%n",
+                tics, seconds, seconds > 0 ? tics / seconds : 0, seconds > 0 ? frameTime.count() / seconds : 0));
+        builder.append(frameTime.toPercentileString()).append('\n');
+        builder.append(conversion.toPercentileString()).append('\n');
+        builder.append(startFrame.toPercentileString()).append('\n');
+        builder.append(finishUpdate.toPercentileString()).append('\n');
+        builder.append(setPalette.toPercentileString()).append('\n');
+        builder.append(submitSound.toPercentileString()).append('\n');
+        builder.append(String.format("audio: %d skipped mixes, %d dropped chunks, %d underruns%n",
+                DoomSound.skippedMixes(), DoomSound.droppedChunks(), DoomSound.underruns()));
+        builder.append(frames);
+        return builder.toString();
+    }
+}
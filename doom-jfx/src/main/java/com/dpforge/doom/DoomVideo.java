@@ -1,22 +1,30 @@
 package com.dpforge.doom;
 
-import java.awt.image.BufferedImage;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
 
 public class DoomVideo {
 
     private static final int COLOR_SIZE = 3;
+    private static final int COLOR_NUMBER = 256;
+    private static final int PALETTE_SIZE = COLOR_NUMBER * COLOR_SIZE;
+    private static final int STATS_INTERVAL = 35 * 10;
+    private static final boolean PRINT_STATS = Boolean.getBoolean("doom.stats");
 
     private static int screenWidth;
     private static int screenHeight;
     private static ByteBuffer mainScreen;
-    private static byte[] palette;
-    private static BufferedImage renderedScreen;
-
-    private static final List<DoomEvent> keyboardEvents = new ArrayList<>();
-    private static DoomDisplay display;
+    // copy of the native screen, one palette index per pixel
+    private static byte[] indexedScreen;
+    // PLAYPAL shared by the native side, followed by one slot for palettes that are not part of it
+    private static ByteBuffer paletteBuffer;
+    // every palette of paletteBuffer expanded to RGB
+    private static int[][] palettes;
+    private static int[] palette;
+    private static FrameExchange frames;
+
+    private static final InputRing input = new InputRing();
+    private static final int[] inputEvents = new int[InputRing.CAPACITY];
+    private static FrameSink sink;
 
     public native static int getScreenWidth();
 
@@ -24,51 +32,99 @@ public class DoomVideo {
 
     public native static ByteBuffer getScreenBuffer(int index, int size);
 
-    private native static void onKeyDown(int keyCode);
+    public native static ByteBuffer getPaletteBuffer();
+
+    private native static int getGameTic();
 
-    private native static void onKeyUp(int keyCode);
+    /**
+     * Posts the first {@code count} packed {@link DoomEvent}s to the game.
+     */
+    private native static void postEvents(int[] events, int count);
 
     public static void initGraphics() {
         System.out.println("initGraphics");
         screenWidth = getScreenWidth();
         screenHeight = getScreenHeight();
         mainScreen = getScreenBuffer(0, screenWidth * screenHeight);
-        renderedScreen = new BufferedImage(screenWidth, screenHeight, BufferedImage.TYPE_INT_RGB);
+        indexedScreen = new byte[screenWidth * screenHeight];
+        frames = new FrameExchange(screenWidth, screenHeight);
 
-        display = new DoomDisplay(screenWidth, screenHeight, renderedScreen);
-        display.start();
+        if (DoomMain.HEADLESS) {
+            sink = new HeadlessSink(screenWidth, screenHeight, frames);
+        } else {
+            sink = new DoomDisplay(screenWidth, screenHeight, frames, input);
+        }
+        sink.start();
 
         System.out.println("initGraphics done");
     }
 
+    public static void shutdownGraphics() {
+        if (sink == null) {
+            return;
+        }
+        sink.stop();
+        if (DoomMain.HEADLESS || PRINT_STATS) {
+            System.out.println(DoomStats.report(frames));
+        }
+    }
+
     public static void finishUpdate() {
-        synchronized (renderedScreen) {
-            for (int y = 0; y < screenHeight; y++) {
-                for (int x = 0; x < screenWidth; x++) {
-                    int colorIndex = mainScreen.get(y * screenWidth + x) & 0xFF;
-                    int r = palette[colorIndex * COLOR_SIZE];
-                    int g = palette[colorIndex * COLOR_SIZE + 1];
-                    int b = palette[colorIndex * COLOR_SIZE + 2];
-                    int color = (r << 16) + (g << 8) + b;
-                    renderedScreen.setRGB(x, y, color);
-                }
-            }
+        long start = System.nanoTime();
+        DoomStats.onFrame(getGameTic());
+        int[] renderedPixels = frames.backPixels();
+        mainScreen.get(0, indexedScreen);
+        for (int i = 0; i < indexedScreen.length; i++) {
+            renderedPixels[i] = palette[indexedScreen[i] & 0xFF];
+        }
+        frames.publish();
+        DoomStats.conversion.add(System.nanoTime() - start);
+        if (PRINT_STATS && DoomStats.conversion.count() % STATS_INTERVAL == 0) {
+            System.out.println(DoomStats.conversion);
+            System.out.println(frames);
         }
-        display.onFinishUpdate();
+        sink.onFinishUpdate();
+        DoomStats.finishUpdate.add(System.nanoTime() - start);
     }
 
-    public static void setPalette(byte[] palette) {
-        DoomVideo.palette = palette;
+    public static void setPalette(int index) {
+        long start = System.nanoTime();
+        if (palettes == null) {
+            initPalettes();
+        }
+        if (index == palettes.length - 1) {
+            // the extra slot is rewritten by the native side every time it is used
+            expandPalette(index);
+        }
+        palette = palettes[index];
+        DoomStats.setPalette.add(System.nanoTime() - start);
+    }
+
+    private static void initPalettes() {
+        paletteBuffer = getPaletteBuffer();
+        palettes = new int[paletteBuffer.capacity() / PALETTE_SIZE][COLOR_NUMBER];
+        for (int i = 0; i < palettes.length; i++) {
+            expandPalette(i);
+        }
+    }
+
+    private static void expandPalette(int index) {
+        int[] target = palettes[index];
+        int offset = index * PALETTE_SIZE;
+        for (int i = 0; i < COLOR_NUMBER; i++) {
+            int r = paletteBuffer.get(offset + i * COLOR_SIZE) & 0xFF;
+            int g = paletteBuffer.get(offset + i * COLOR_SIZE + 1) & 0xFF;
+            int b = paletteBuffer.get(offset + i * COLOR_SIZE + 2) & 0xFF;
+            target[i] = (r << 16) | (g << 8) | b;
+        }
     }
 
     public static void startFrame() {
-        keyboardEvents.clear();
-        display.keyboard.getAllCodes(keyboardEvents);
-        for (DoomEvent event : keyboardEvents) {
-            switch (event.type()) {
-                case KEY_DOWN -> onKeyDown(event.code());
-                case KEY_UP -> onKeyUp(event.code());
-            }
+        long start = System.nanoTime();
+        int count = input.drain(inputEvents);
+        if (count > 0) {
+            postEvents(inputEvents, count);
         }
+        DoomStats.startFrame.add(System.nanoTime() - start);
     }
 }
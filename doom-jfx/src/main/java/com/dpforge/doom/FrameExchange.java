@@ -0,0 +1,84 @@
+package com.dpforge.doom;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free triple buffer between the game thread (producer) and the EDT (consumer).
+ * <p>
+ * The producer always owns the back frame and the consumer always owns the front frame. The third one sits
+ * in the middle and is swapped atomically by both sides, so neither of them ever waits for the other.
+ * If the producer publishes again before the consumer picked up the previous frame, that frame is dropped.
+ */
+class FrameExchange {
+
+    private static final int INDEX_MASK = 0b011;
+    // set when the middle frame holds a frame the consumer has not seen yet
+    private static final int FRESH = 0b100;
+
+    private final BufferedImage[] frames = new BufferedImage[3];
+    private final int[][] pixels = new int[3][];
+
+    private final AtomicInteger middle = new AtomicInteger(1);
+    // owned by the producer
+    private int back = 0;
+    // owned by the consumer
+    private int front = 2;
+
+    private volatile long produced;
+    private volatile long presented;
+    private volatile long dropped;
+
+    FrameExchange(int width, int height) {
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels[i] = ((DataBufferInt) frames[i].getRaster().getDataBuffer()).getData();
+        }
+    }
+
+    /**
+     * Pixels of the frame the producer is allowed to write to. Changes after every {@link #publish()}.
+     */
+    int[] backPixels() {
+        return pixels[back];
+    }
+
+    void publish() {
+        int previous = middle.getAndSet(back | FRESH);
+        back = previous & INDEX_MASK;
+        if ((previous & FRESH) != 0) {
+            dropped++;
+        }
+        produced++;
+    }
+
+    /**
+     * Returns the latest published frame. If nothing new was published since the last call the same frame
+     * is returned again.
+     */
+    BufferedImage acquire() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & INDEX_MASK;
+            presented++;
+        }
+        return frames[front];
+    }
+
+    long produced() {
+        return produced;
+    }
+
+    long presented() {
+        return presented;
+    }
+
+    long dropped() {
+        return dropped;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("frames: produced=%d presented=%d dropped=%d", produced, presented, dropped);
+    }
+}
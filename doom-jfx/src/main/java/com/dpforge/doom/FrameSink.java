@@ -0,0 +1,20 @@
+package com.dpforge.doom;
+
+/**
+ * Receives frames published to {@link FrameExchange}.
+ */
+interface FrameSink {
+
+    void start();
+
+    /**
+     * Called on the game thread after a new frame was published.
+     */
+    void onFinishUpdate();
+
+    /**
+     * Called on the game thread when the game shuts the graphics down.
+     */
+    default void stop() {
+    }
+}
@@ -0,0 +1,106 @@
+package com.dpforge.doom;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+
+/**
+ * Off-screen replacement of {@link DoomDisplay}. Takes every frame on the game thread and optionally writes it
+ * to {@code doom.capture.dir}: one PNG per frame or a single stream of raw RGB24 frames.
+ */
+class HeadlessSink implements FrameSink {
+
+    private static final String RAW_FILE_NAME = "frames.rgb";
+
+    private final FrameExchange frames;
+    private final int width;
+    private final int height;
+    private final File captureDir;
+    private final CaptureFormat format;
+
+    private byte[] rawFrame;
+    private OutputStream rawOutput;
+    private int frameNumber;
+
+    HeadlessSink(int width, int height, FrameExchange frames) {
+        this.width = width;
+        this.height = height;
+        this.frames = frames;
+        String dir = System.getProperty("doom.capture.dir");
+        this.captureDir = dir == null ? null : new File(dir);
+        this.format = CaptureFormat.valueOf(
+                System.getProperty("doom.capture.format", CaptureFormat.PNG.name()).toUpperCase(Locale.ROOT)
+        );
+    }
+
+    @Override
+    public void start() {
+        if (captureDir == null) {
+            return;
+        }
+        if (!captureDir.exists() && !captureDir.mkdirs()) {
+            throw new UncheckedIOException(new IOException("Cannot create capture directory: " + captureDir));
+        }
+        if (format == CaptureFormat.RAW) {
+            try {
+                rawOutput = new BufferedOutputStream(new FileOutputStream(new File(captureDir, RAW_FILE_NAME)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            rawFrame = new byte[width * height * 3];
+        }
+        System.out.format("Capturing %s frames of %dx%d to %s\n", format, width, height, captureDir);
+    }
+
+    @Override
+    public void onFinishUpdate() {
+        BufferedImage frame = frames.acquire();
+        if (captureDir == null) {
+            return;
+        }
+        try {
+            switch (format) {
+                case PNG -> ImageIO.write(frame, "PNG", new File(captureDir, String.format("frame%06d.png", frameNumber)));
+                case RAW -> writeRaw(frame);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        frameNumber++;
+    }
+
+    @Override
+    public void stop() {
+        if (rawOutput != null) {
+            try {
+                rawOutput.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void writeRaw(BufferedImage frame) throws IOException {
+        int[] pixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+        int i = 0;
+        for (int rgb : pixels) {
+            rawFrame[i++] = (byte) (rgb >> 16);
+            rawFrame[i++] = (byte) (rgb >> 8);
+            rawFrame[i++] = (byte) rgb;
+        }
+        rawOutput.write(rawFrame);
+    }
+
+    private enum CaptureFormat {
+        PNG,
+        // RGB24 frames one after another, e.g. for `ffmpeg -f rawvideo -pix_fmt rgb24`
+        RAW
+    }
+}
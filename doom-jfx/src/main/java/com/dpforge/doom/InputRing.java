@@ -0,0 +1,44 @@
+package com.dpforge.doom;
+
+/**
+ * Fixed-capacity single-producer/single-consumer queue of packed {@link DoomEvent}s.
+ * The EDT adds events, the game thread drains them once per tic.
+ */
+class InputRing {
+
+    static final int CAPACITY = 256;
+    private static final int MASK = CAPACITY - 1;
+
+    private final int[] events = new int[CAPACITY];
+
+    private volatile long writePosition;
+    private volatile long readPosition;
+
+    /**
+     * @return false if the queue is full and the event was dropped
+     */
+    boolean add(int event) {
+        long position = writePosition;
+        if (position - readPosition == CAPACITY) {
+            return false;
+        }
+        events[(int) position & MASK] = event;
+        writePosition = position + 1;
+        return true;
+    }
+
+    /**
+     * Moves all queued events into {@code target}, which must hold at least {@link #CAPACITY} items.
+     *
+     * @return number of events moved
+     */
+    int drain(int[] target) {
+        long position = readPosition;
+        int count = (int) (writePosition - position);
+        for (int i = 0; i < count; i++) {
+            target[i] = events[(int) (position + i) & MASK];
+        }
+        readPosition = position + count;
+        return count;
+    }
+}
@@ -0,0 +1,83 @@
+package com.dpforge.doom;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates durations of a repeating operation, e.g. converting one frame.
+ * Updated by a single thread, read by any.
+ */
+class TimingCounter {
+
+    // percentiles are computed over this many latest samples
+    private static final int SAMPLE_COUNT = 1 << 14;
+
+    private final String name;
+    private final long[] samples = new long[SAMPLE_COUNT];
+
+    private volatile long count;
+    private volatile long totalNanos;
+    private volatile long lastNanos;
+    private volatile long maxNanos;
+
+    TimingCounter(String name) {
+        this.name = name;
+    }
+
+    void add(long nanos) {
+        samples[(int) (count & (SAMPLE_COUNT - 1))] = nanos;
+        count++;
+        totalNanos += nanos;
+        lastNanos = nanos;
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+    }
+
+    long count() {
+        return count;
+    }
+
+    long totalNanos() {
+        return totalNanos;
+    }
+
+    long lastNanos() {
+        return lastNanos;
+    }
+
+    long maxNanos() {
+        return maxNanos;
+    }
+
+    long averageNanos() {
+        long c = count;
+        return c == 0 ? 0 : totalNanos / c;
+    }
+
+    /**
+     * @param percentile value in range [0, 100]
+     */
+    long percentileNanos(double percentile) {
+        int size = (int) Math.min(count, SAMPLE_COUNT);
+        if (size == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * size) - 1;
+        return sorted[Math.max(0, Math.min(size - 1, index))];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: count=%d avg=%d us last=%d us max=%d us",
+                name, count, averageNanos() / 1000, lastNanos / 1000, maxNanos / 1000);
+    }
+
+    String toPercentileString() {
+        return String.format("%s: count=%d avg=%d us p50=%d us p95=%d us p99=%d us max=%d us",
+                name, count, averageNanos() / 1000,
+                percentileNanos(50) / 1000, percentileNanos(95) / 1000, percentileNanos(99) / 1000,
+                maxNanos / 1000);
+    }
+}
@@ -130,6 +130,12 @@ int 		lengths[NUMSFX];
 //  that is submitted to the audio device.
 signed short	mixbuffer[MIXBUFFERSIZE];
 
+#ifdef JNI
+// Whether I_UpdateSound mixed a chunk this frame.
+// Frames the output has no room for are skipped.
+static int	mixedchunk;
+#endif
+
 // Create a direct ByteBuffer that wraps the native memory
 // In fact, the mixbuffer size should be twice larger since it `singed short`. But the second half of the buffer is filled with 0's.
 // The investigation is needed.
@@ -588,6 +594,14 @@ void I_UpdateSound( void )
   // Mixing channel index.
   int				chan;
 
+#ifdef JNI
+    // Channels only advance when their chunk will be played,
+    //  so nothing mixed is lost while the output is behind.
+    mixedchunk = javaCallStaticBoolean(JAVA_SOUND_CAN_SUBMIT);
+    if (!mixedchunk)
+	return;
+#endif
+
     // Left and right channel
     //  are in global mixbuffer, alternating.
     leftout = mixbuffer;
@@ -699,7 +713,8 @@ I_SubmitSound(void)
   // Write it to DSP device.
   // write(audio_fd, mixbuffer, SAMPLECOUNT*BUFMUL);
   #ifdef JNI
-  javaCallStaticVoid("com/dpforge/doom/DoomSound", "submitSound");
+  if (mixedchunk)
+      javaCallStaticVoid(JAVA_SOUND_SUBMIT_SOUND);
   #endif
   #ifdef MACOSAPP
   cbSubmitSound();
@@ -789,7 +804,7 @@ I_InitSound()
     mixbuffer[i] = 0;
 
   #ifdef JNI
-  javaCallStaticVoid("com/dpforge/doom/DoomSound", "initSound");
+  javaCallStaticVoid(JAVA_SOUND_INIT_SOUND);
   #endif
 
   #ifdef MACOSAPP
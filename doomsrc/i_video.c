@@ -70,7 +70,67 @@ void onKeyUp(int keyCode) {
 #endif
 
 #ifdef JNI
+#include <stdlib.h>
+#include <string.h>
 #include "java_host.h"
+#include "w_wad.h"
+#include "z_zone.h"
+#include "doomstat.h"
+
+#define PALETTESIZE (3 * 256)
+
+// Copy of PLAYPAL shared with Java as a direct buffer.
+// One extra slot at the end holds palettes that are not part of PLAYPAL.
+static byte *playpal;
+static int numplaypals;
+
+static void I_LoadPlayPal(void)
+{
+    int lump;
+
+    if (playpal)
+        return;
+
+    lump = W_GetNumForName("PLAYPAL");
+    numplaypals = W_LumpLength(lump) / PALETTESIZE;
+    playpal = malloc((numplaypals + 1) * PALETTESIZE);
+    W_ReadLump(lump, playpal);
+    memset(playpal + numplaypals * PALETTESIZE, 0, PALETTESIZE);
+}
+
+//
+// Returns the index of the palette in the shared PLAYPAL copy.
+// Palettes that are not found there are copied into the extra slot.
+//
+static int I_FindPaletteIndex(byte *palette)
+{
+    byte *lump;
+    int offset;
+    int i;
+
+    I_LoadPlayPal();
+
+    // callers usually pass a pointer into the cached PLAYPAL lump
+    lump = W_CacheLumpName("PLAYPAL", PU_CACHE);
+    offset = palette - lump;
+    if (offset >= 0 && offset < numplaypals * PALETTESIZE && offset % PALETTESIZE == 0)
+        return offset / PALETTESIZE;
+
+    for (i = 0; i < numplaypals; i++)
+    {
+        if (!memcmp(playpal + i * PALETTESIZE, palette, PALETTESIZE))
+            return i;
+    }
+
+    memcpy(playpal + numplaypals * PALETTESIZE, palette, PALETTESIZE);
+    return numplaypals;
+}
+
+JNIEXPORT jobject JNICALL Java_com_dpforge_doom_DoomVideo_getPaletteBuffer(JNIEnv *env, jclass clazz)
+{
+    I_LoadPlayPal();
+    return (*env)->NewDirectByteBuffer(env, playpal, (numplaypals + 1) * PALETTESIZE);
+}
 
 JNIEXPORT jint JNICALL Java_com_dpforge_doom_DoomVideo_getScreenWidth(JNIEnv *env, jclass clazz)
 {
@@ -82,37 +142,63 @@ JNIEXPORT jint JNICALL Java_com_dpforge_doom_DoomVideo_getScreenHeight(JNIEnv *e
     return SCREENHEIGHT;
 }
 
+JNIEXPORT jint JNICALL Java_com_dpforge_doom_DoomVideo_getGameTic(JNIEnv *env, jclass clazz)
+{
+    return gametic;
+}
+
 JNIEXPORT jobject JNICALL Java_com_dpforge_doom_DoomVideo_getScreenBuffer(JNIEnv *env, jclass clazz, jint index, jint size)
 {
     // Create a direct ByteBuffer that wraps the native memory
     return (*env)->NewDirectByteBuffer(env, screens[index], size);
 }
 
-JNIEXPORT void JNICALL Java_com_dpforge_doom_DoomVideo_onKeyDown(JNIEnv *env, jclass clazz, jint keyCode)
+// Layout of the packed events, see DoomEvent.java
+#define EVENT_TYPE_SHIFT 28
+#define EVENT_KEY_MASK ((1 << EVENT_TYPE_SHIFT) - 1)
+#define EVENT_MOTION_BITS 12
+#define EVENT_MOTION_MASK ((1 << EVENT_MOTION_BITS) - 1)
+#define EVENT_BUTTONS_SHIFT (2 * EVENT_MOTION_BITS)
+
+static int I_UnpackMotion(int packed)
 {
-    event_t event;
-    event.type = ev_keydown;
-    event.data1 = keyCode;
-    D_PostEvent(&event);
+    int value = packed & EVENT_MOTION_MASK;
+    // sign extend
+    return (value ^ (1 << (EVENT_MOTION_BITS - 1))) - (1 << (EVENT_MOTION_BITS - 1));
 }
 
-JNIEXPORT void JNICALL Java_com_dpforge_doom_DoomVideo_onKeyUp(JNIEnv *env, jclass clazz, jint keyCode)
+JNIEXPORT void JNICALL Java_com_dpforge_doom_DoomVideo_postEvents(JNIEnv *env, jclass clazz, jintArray events, jint count)
 {
     event_t event;
-    event.type = ev_keyup;
-    event.data1 = keyCode;
-    D_PostEvent(&event);
-}
+    jint *packed;
+    int i;
 
-void callDoomVideo(const char *name)
-{
-    javaCallStaticVoid("com/dpforge/doom/DoomVideo", name);
+    packed = (*env)->GetPrimitiveArrayCritical(env, events, NULL);
+    for (i = 0; i < count; i++)
+    {
+        event.type = (unsigned int)packed[i] >> EVENT_TYPE_SHIFT;
+        if (event.type == ev_mouse)
+        {
+            event.data1 = (packed[i] >> EVENT_BUTTONS_SHIFT) & 7;
+            event.data2 = I_UnpackMotion(packed[i] >> EVENT_MOTION_BITS);
+            event.data3 = I_UnpackMotion(packed[i]);
+        }
+        else
+        {
+            event.data1 = packed[i] & EVENT_KEY_MASK;
+        }
+        D_PostEvent(&event);
+    }
+    (*env)->ReleasePrimitiveArrayCritical(env, events, packed, JNI_ABORT);
 }
 
 #endif
 
 void I_ShutdownGraphics(void)
 {
+#ifdef JNI
+    javaCallStaticVoid(JAVA_VIDEO_SHUTDOWN_GRAPHICS);
+#endif
 }
 
 void I_StartFrame (void)
@@ -121,7 +207,7 @@ void I_StartFrame (void)
     cbStartFrame();
 #endif
 #ifdef JNI
-    callDoomVideo("startFrame");
+    javaCallStaticVoid(JAVA_VIDEO_START_FRAME);
 #endif
 }
 
@@ -143,7 +229,7 @@ void I_FinishUpdate (void)
     cbFinishUpdate(screens[0]);
 #endif
 #ifdef JNI
-    callDoomVideo("finishUpdate");
+    javaCallStaticVoid(JAVA_VIDEO_FINISH_UPDATE);
 #endif
 }
 
@@ -157,18 +243,7 @@ void I_SetPalette (byte* palette)
     cbSetPalette(palette);
 #endif
 #ifdef JNI
-    JNIEnv *env;
-    (*g_jvm)->AttachCurrentThread(g_jvm, (void**)&env, NULL);
-
-    // 256 colors, 3 bytes each (RGB)
-    jbyteArray result = (*env)->NewByteArray(env, 3 * 256);
-    (*env)->SetByteArrayRegion(env, result, 0, 3 * 256, (jbyte*)palette);
-
-    jclass cls = (*env)->FindClass(env, "com/dpforge/doom/DoomVideo");
-    jmethodID mid = (*env)->GetStaticMethodID(env, cls, "setPalette", "([B)V");
-    (*env)->CallStaticVoidMethod(env, cls, mid, result);
-
-    (*g_jvm)->DetachCurrentThread(g_jvm);
+    javaCallStaticVoidInt(JAVA_VIDEO_SET_PALETTE, I_FindPaletteIndex(palette));
 #endif
 }
 
@@ -178,6 +253,6 @@ void I_InitGraphics(void)
     cbInitGraphics(SCREENWIDTH, SCREENHEIGHT);
 #endif
 #ifdef JNI
-    callDoomVideo("initGraphics");
+    javaCallStaticVoid(JAVA_VIDEO_INIT_GRAPHICS);
 #endif
 }
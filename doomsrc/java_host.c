@@ -1,20 +1,123 @@
 #ifdef JNI
+#include <stdio.h>
 #include "java_host.h"
 
+JavaVM *g_jvm;
+
+typedef enum
+{
+    JAVA_CLASS_VIDEO,
+    JAVA_CLASS_SOUND,
+    NUMJAVACLASSES
+} javaclass_t;
+
+typedef struct
+{
+    javaclass_t cls;
+    const char *name;
+    const char *signature;
+} javamethodinfo_t;
+
+static const char *classnames[NUMJAVACLASSES] =
+{
+    "com/dpforge/doom/DoomVideo",
+    "com/dpforge/doom/DoomSound"
+};
+
+// Must follow the order of javamethod_t.
+static const javamethodinfo_t methodinfos[NUMJAVAMETHODS] =
+{
+    { JAVA_CLASS_VIDEO, "initGraphics", "()V" },
+    { JAVA_CLASS_VIDEO, "startFrame", "()V" },
+    { JAVA_CLASS_VIDEO, "finishUpdate", "()V" },
+    { JAVA_CLASS_VIDEO, "setPalette", "(I)V" },
+    { JAVA_CLASS_VIDEO, "shutdownGraphics", "()V" },
+    { JAVA_CLASS_SOUND, "initSound", "()V" },
+    { JAVA_CLASS_SOUND, "submitSound", "()V" },
+    { JAVA_CLASS_SOUND, "canSubmit", "()Z" }
+};
+
+static jclass classes[NUMJAVACLASSES];
+static jmethodID methods[NUMJAVAMETHODS];
+
+// All callbacks come from the single game thread, so one cached environment is enough.
+static JNIEnv *gameenv;
+
 JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved)
 {
+    JNIEnv *env;
+    int i;
+
     g_jvm = vm;
     printf("JNI JNI_OnLoad\n");
+
+    if ((*vm)->GetEnv(vm, (void**)&env, JNI_VERSION_1_6) != JNI_OK)
+        return JNI_ERR;
+
+    for (i = 0; i < NUMJAVACLASSES; i++)
+    {
+        jclass cls = (*env)->FindClass(env, classnames[i]);
+        if (cls == NULL)
+        {
+            fprintf(stderr, "JNI_OnLoad: class %s not found\n", classnames[i]);
+            return JNI_ERR;
+        }
+        classes[i] = (*env)->NewGlobalRef(env, cls);
+        (*env)->DeleteLocalRef(env, cls);
+    }
+
+    for (i = 0; i < NUMJAVAMETHODS; i++)
+    {
+        const javamethodinfo_t *info = &methodinfos[i];
+        methods[i] = (*env)->GetStaticMethodID(env, classes[info->cls], info->name, info->signature);
+        if (methods[i] == NULL)
+        {
+            fprintf(stderr, "JNI_OnLoad: method %s%s not found\n", info->name, info->signature);
+            return JNI_ERR;
+        }
+    }
+
     return JNI_VERSION_1_6;
 }
 
-void javaCallStaticVoid(const char *className, const char *methodName)
+JNIEnv* javaGetEnv(void)
 {
-    JNIEnv *env;
-    (*g_jvm)->AttachCurrentThread(g_jvm, (void**)&env, NULL);
-    jclass cls = (*env)->FindClass(env, className);
-    jmethodID mid = (*env)->GetStaticMethodID(env, cls, methodName, "()V");
-    (*env)->CallStaticVoidMethod(env, cls, mid);
-    (*g_jvm)->DetachCurrentThread(g_jvm);
+    if (gameenv == NULL)
+    {
+        if ((*g_jvm)->GetEnv(g_jvm, (void**)&gameenv, JNI_VERSION_1_6) != JNI_OK)
+            (*g_jvm)->AttachCurrentThread(g_jvm, (void**)&gameenv, NULL);
+    }
+    return gameenv;
+}
+
+static void javaCheckException(JNIEnv *env)
+{
+    if ((*env)->ExceptionCheck(env))
+    {
+        (*env)->ExceptionDescribe(env);
+        (*env)->ExceptionClear(env);
+    }
+}
+
+void javaCallStaticVoid(javamethod_t method)
+{
+    JNIEnv *env = javaGetEnv();
+    (*env)->CallStaticVoidMethod(env, classes[methodinfos[method].cls], methods[method]);
+    javaCheckException(env);
+}
+
+void javaCallStaticVoidInt(javamethod_t method, int arg)
+{
+    JNIEnv *env = javaGetEnv();
+    (*env)->CallStaticVoidMethod(env, classes[methodinfos[method].cls], methods[method], (jint)arg);
+    javaCheckException(env);
+}
+
+int javaCallStaticBoolean(javamethod_t method)
+{
+    JNIEnv *env = javaGetEnv();
+    jboolean result = (*env)->CallStaticBooleanMethod(env, classes[methodinfos[method].cls], methods[method]);
+    javaCheckException(env);
+    return result == JNI_TRUE;
 }
-#endif
\ No newline at end of file
+#endif
@@ -3,8 +3,29 @@
 
 #include <jni.h>
 
-JavaVM *g_jvm;
+extern JavaVM *g_jvm;
 
-void javaCallStaticVoid(const char *className, const char *methodName);
+// Static Java callbacks. Classes and method IDs are resolved once in JNI_OnLoad.
+typedef enum
+{
+    JAVA_VIDEO_INIT_GRAPHICS,
+    JAVA_VIDEO_START_FRAME,
+    JAVA_VIDEO_FINISH_UPDATE,
+    JAVA_VIDEO_SET_PALETTE,
+    JAVA_VIDEO_SHUTDOWN_GRAPHICS,
+    JAVA_SOUND_INIT_SOUND,
+    JAVA_SOUND_SUBMIT_SOUND,
+    JAVA_SOUND_CAN_SUBMIT,
+    NUMJAVAMETHODS
+} javamethod_t;
 
-#endif
\ No newline at end of file
+// Environment of the game thread. The thread is attached on first use and stays attached.
+JNIEnv* javaGetEnv(void);
+
+void javaCallStaticVoid(javamethod_t method);
+
+void javaCallStaticVoidInt(javamethod_t method, int arg);
+
+int javaCallStaticBoolean(javamethod_t method);
+
+#endif
@@ -0,0 +1,397 @@
+package com.dpforge.doom.wad;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Pre-processed assets of a WAD kept in a file next to other runs, so opening the same WAD again skips decoding
+ * pictures and composing textures.
+ * <p>
+ * The cache file is named after the size and the CRC-32C of the WAD, so a changed WAD gets a new file.
+ * It holds the lump directory, the patch names, the map markers and the composed wall textures. The file is
+ * memory-mapped and read through {@link ByteBuffer} views, only a texture requested as a {@link WallTexture}
+ * copies the pixels, once for all textures.
+ * <p>
+ * Layout, all numbers little endian:
+ * <pre>
+ * header     magic "WADC", version, WAD size (long), WAD CRC-32C,
+ *            lump count, patch name count, map count, texture count, pixel bytes
+ * directory  lump count * (position, size, name[8])
+ * pnames     patch name count * name[8]
+ * maps       map count * (name[8], marker lump index)
+ * textures   texture count * (name[8], width (short), height (short), offset of the first column offset)
+ * columns    offset in the pixels of every column of every texture
+ * pixels     palette indexes of the columns, columns taken from the same patch are stored once
+ * </pre>
+ */
+public class AssetCache {
+
+    private static final int MAGIC = 0x43444157; // "WADC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 44;
+    private static final int NAME_SIZE = 8;
+    private static final int DIRECTORY_ENTRY_SIZE = 16;
+    private static final int MAP_ENTRY_SIZE = 12;
+    private static final int TEXTURE_ENTRY_SIZE = 16;
+
+    private final ByteBuffer wadData;
+    private final ByteBuffer data;
+    private final int lumpCount;
+    private final int pnameCount;
+    private final int mapCount;
+    private final int textureCount;
+    private final int directoryOffset;
+    private final int pnamesOffset;
+    private final int mapsOffset;
+    private final int texturesOffset;
+    private final int pixelsOffset;
+    private final int pixelsSize;
+    private final Map<String, Integer> textureIndexes;
+    // copy of the pixels shared by all textures returned by getTexture, made on first use
+    private byte[] pixels;
+
+    private AssetCache(ByteBuffer wadData, ByteBuffer data) throws WadException {
+        this.wadData = wadData;
+        this.data = data;
+        if (data.capacity() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw new WadException("Not an asset cache");
+        }
+        lumpCount = data.getInt(20);
+        pnameCount = data.getInt(24);
+        mapCount = data.getInt(28);
+        textureCount = data.getInt(32);
+        pixelsSize = data.getInt(36);
+        if (lumpCount < 0 || pnameCount < 0 || mapCount < 0 || textureCount < 0 || pixelsSize < 0) {
+            throw new WadException("Asset cache has negative counts");
+        }
+        // sections are checked against the file before they are read, in long so huge counts don't overflow
+        long columnsStart = HEADER_SIZE
+                + (long) lumpCount * DIRECTORY_ENTRY_SIZE
+                + (long) pnameCount * NAME_SIZE
+                + (long) mapCount * MAP_ENTRY_SIZE
+                + (long) textureCount * TEXTURE_ENTRY_SIZE;
+        if (columnsStart > data.capacity()) {
+            throw new WadException("Asset cache is truncated");
+        }
+        directoryOffset = HEADER_SIZE;
+        pnamesOffset = directoryOffset + lumpCount * DIRECTORY_ENTRY_SIZE;
+        mapsOffset = pnamesOffset + pnameCount * NAME_SIZE;
+        texturesOffset = mapsOffset + mapCount * MAP_ENTRY_SIZE;
+        long columnCount = 0;
+        for (int i = 0; i < textureCount; i++) {
+            int entry = texturesOffset + i * TEXTURE_ENTRY_SIZE;
+            // the columns of the textures follow each other
+            if (data.getInt(entry + NAME_SIZE + 4) != columnCount) {
+                throw new WadException("Asset cache has misplaced columns");
+            }
+            columnCount += data.getShort(entry + NAME_SIZE) & 0xFFFF;
+        }
+        if (columnsStart + columnCount * 4L + pixelsSize != data.capacity()) {
+            throw new WadException("Asset cache is truncated");
+        }
+        pixelsOffset = (int) (columnsStart + columnCount * 4);
+        for (int i = 0; i < textureCount; i++) {
+            int entry = texturesOffset + i * TEXTURE_ENTRY_SIZE;
+            int width = data.getShort(entry + NAME_SIZE) & 0xFFFF;
+            int height = data.getShort(entry + NAME_SIZE + 2) & 0xFFFF;
+            for (int x = 0; x < width; x++) {
+                int column = data.getInt(columnOffset(entry, x));
+                if (column < 0 || (long) column + height > pixelsSize) {
+                    throw new WadException("Asset cache has a column outside of the pixels");
+                }
+            }
+        }
+        for (int i = 0; i < lumpCount; i++) {
+            int entry = directoryOffset + i * DIRECTORY_ENTRY_SIZE;
+            int position = data.getInt(entry);
+            int size = data.getInt(entry + 4);
+            if (position < 0 || size < 0 || (long) position + size > wadData.capacity()) {
+                throw new WadException("Asset cache has a lump outside of the WAD");
+            }
+        }
+        for (int i = 0; i < mapCount; i++) {
+            int marker = data.getInt(mapsOffset + i * MAP_ENTRY_SIZE + NAME_SIZE);
+            if (marker < 0 || marker >= lumpCount) {
+                throw new WadException("Asset cache has a map outside of the directory");
+            }
+        }
+
+        textureIndexes = new HashMap<>(textureCount * 2);
+        for (int i = 0; i < textureCount; i++) {
+            textureIndexes.put(readName(texturesOffset + i * TEXTURE_ENTRY_SIZE).toUpperCase(Locale.ROOT), i);
+        }
+    }
+
+    /**
+     * Opens the cache of the WAD in the directory, building it first if there is none for this content.
+     */
+    public static AssetCache open(File wadFile, File cacheDir) throws IOException, WadException {
+        return open(MappedWadFile.open(wadFile), cacheDir);
+    }
+
+    /**
+     * Same as {@link #open(File, File)} for a WAD which is already mapped, it is not mapped again.
+     */
+    public static AssetCache open(MappedWadFile wad, File cacheDir) throws IOException, WadException {
+        ByteBuffer wadData = wad.data();
+        CRC32C crc = new CRC32C();
+        crc.update(wadData.duplicate());
+        long wadSize = wadData.capacity();
+        int wadCrc = (int) crc.getValue();
+
+        File cacheFile = new File(cacheDir, String.format("%08x-%d.cache", wadCrc, wadSize));
+        if (cacheFile.isFile()) {
+            ByteBuffer data = map(cacheFile);
+            if (isValid(data, wadSize, wadCrc)) {
+                try {
+                    return new AssetCache(wadData, data);
+                } catch (WadException e) {
+                    // broken file, build it again
+                }
+            }
+        }
+        write(wad, wadSize, wadCrc, cacheFile);
+        return new AssetCache(wadData, map(cacheFile));
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return data.order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    // a cache written by another version or for other content is rebuilt
+    private static boolean isValid(ByteBuffer data, long wadSize, int wadCrc) {
+        return data.capacity() >= HEADER_SIZE
+                && data.getInt(0) == MAGIC
+                && data.getInt(4) == VERSION
+                && data.getLong(8) == wadSize
+                && data.getInt(16) == wadCrc;
+    }
+
+    private static void write(MappedWadFile wad, long wadSize, int wadCrc, File cacheFile)
+            throws IOException, WadException {
+        String[] pnames = wad.findLump("PNAMES") != null ? wad.getPNames() : new String[0];
+        List<String> mapNames = wad.getMapNames();
+        List<WallTexture> textures = new ArrayList<>();
+        if (pnames.length > 0) {
+            TextureManager textureManager = new TextureManager(wad);
+            for (String name : wad.getTextures().keySet()) {
+                textures.add(textureManager.get(name));
+            }
+        }
+
+        // every source array of the columns is stored once, so patch columns shared by textures stay shared
+        Map<byte[], Integer> arrayOffsets = new IdentityHashMap<>();
+        List<byte[]> arrays = new ArrayList<>();
+        int pixelsSize = 0;
+        int columnCount = 0;
+        for (WallTexture texture : textures) {
+            for (byte[] column : texture.columns()) {
+                if (!arrayOffsets.containsKey(column)) {
+                    arrayOffsets.put(column, pixelsSize);
+                    arrays.add(column);
+                    pixelsSize += column.length;
+                }
+            }
+            columnCount += texture.width();
+        }
+
+        int size = HEADER_SIZE
+                + wad.getLumpCount() * DIRECTORY_ENTRY_SIZE
+                + pnames.length * NAME_SIZE
+                + mapNames.size() * MAP_ENTRY_SIZE
+                + textures.size() * TEXTURE_ENTRY_SIZE
+                + columnCount * 4
+                + pixelsSize;
+        ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC)
+                .putInt(VERSION)
+                .putLong(wadSize)
+                .putInt(wadCrc)
+                .putInt(wad.getLumpCount())
+                .putInt(pnames.length)
+                .putInt(mapNames.size())
+                .putInt(textures.size())
+                .putInt(pixelsSize)
+                .putInt(0);
+        for (int i = 0; i < wad.getLumpCount(); i++) {
+            WadLump lump = wad.getLump(i);
+            out.putInt(lump.position()).putInt(lump.size());
+            putName(out, lump.name());
+        }
+        for (String name : pnames) {
+            putName(out, name);
+        }
+        for (String name : mapNames) {
+            putName(out, name);
+            out.putInt(wad.getLump(name).index());
+        }
+        int columnIndex = 0;
+        for (WallTexture texture : textures) {
+            putName(out, texture.name());
+            out.putShort((short) texture.width()).putShort((short) texture.height()).putInt(columnIndex);
+            columnIndex += texture.width();
+        }
+        for (WallTexture texture : textures) {
+            for (int x = 0; x < texture.width(); x++) {
+                out.putInt(arrayOffsets.get(texture.columns()[x]) + texture.offsets()[x]);
+            }
+        }
+        for (byte[] array : arrays) {
+            out.put(array);
+        }
+        out.flip();
+
+        FileUtil.ensureParentExist(cacheFile);
+        // written under another name first, so a run that stops halfway doesn't leave a broken cache
+        File tmpFile = new File(cacheFile.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmpFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+        Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void putName(ByteBuffer out, String name) {
+        byte[] bytes = Arrays.copyOf(name.getBytes(StandardCharsets.US_ASCII), NAME_SIZE);
+        out.put(bytes);
+    }
+
+    private String readName(int offset) {
+        int length = 0;
+        while (length < NAME_SIZE && data.get(offset + length) != 0) {
+            length++;
+        }
+        byte[] bytes = new byte[length];
+        data.get(offset, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    public int getLumpCount() {
+        return lumpCount;
+    }
+
+    public String getLumpName(int index) {
+        return readName(directoryOffset + index * DIRECTORY_ENTRY_SIZE + 8);
+    }
+
+    /**
+     * Raw lump bytes, a view of the mapped WAD without copying.
+     */
+    public ByteBuffer getLumpData(int index) {
+        int entry = directoryOffset + index * DIRECTORY_ENTRY_SIZE;
+        return wadData.slice(data.getInt(entry), data.getInt(entry + 4)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public String[] getPNames() {
+        String[] result = new String[pnameCount];
+        for (int i = 0; i < pnameCount; i++) {
+            result[i] = readName(pnamesOffset + i * NAME_SIZE);
+        }
+        return result;
+    }
+
+    public List<String> getMapNames() {
+        List<String> result = new ArrayList<>(mapCount);
+        for (int i = 0; i < mapCount; i++) {
+            result.add(readName(mapsOffset + i * MAP_ENTRY_SIZE));
+        }
+        return result;
+    }
+
+    /**
+     * @return index of the marker lump of the map, the map lumps follow it, or -1 if there is no such map
+     */
+    public int getMapLump(String name) {
+        for (int i = 0; i < mapCount; i++) {
+            if (readName(mapsOffset + i * MAP_ENTRY_SIZE).equals(name)) {
+                return data.getInt(mapsOffset + i * MAP_ENTRY_SIZE + NAME_SIZE);
+            }
+        }
+        return -1;
+    }
+
+    public List<String> getTextureNames() {
+        List<String> result = new ArrayList<>(textureCount);
+        for (int i = 0; i < textureCount; i++) {
+            result.add(readName(texturesOffset + i * TEXTURE_ENTRY_SIZE));
+        }
+        return result;
+    }
+
+    /**
+     * Palette indexes of a column of a composed texture, a view of the mapped cache without copying.
+     *
+     * @param name texture name, case insensitive
+     * @return the column or null if there is no such texture
+     */
+    public ByteBuffer getTextureColumn(String name, int x) {
+        Integer index = textureIndexes.get(name.toUpperCase(Locale.ROOT));
+        if (index == null) {
+            return null;
+        }
+        int entry = texturesOffset + index * TEXTURE_ENTRY_SIZE;
+        int width = data.getShort(entry + NAME_SIZE) & 0xFFFF;
+        int height = data.getShort(entry + NAME_SIZE + 2) & 0xFFFF;
+        if (x < 0 || x >= width) {
+            throw new IllegalArgumentException("Column " + x + " is outside of texture " + name);
+        }
+        int column = data.getInt(columnOffset(entry, x));
+        return data.slice(pixelsOffset + column, height);
+    }
+
+    /**
+     * @param name texture name, case insensitive
+     * @return the composed texture or null if there is no such texture
+     */
+    public WallTexture getTexture(String name) {
+        Integer index = textureIndexes.get(name.toUpperCase(Locale.ROOT));
+        if (index == null) {
+            return null;
+        }
+        byte[] pixels = pixels();
+        int entry = texturesOffset + index * TEXTURE_ENTRY_SIZE;
+        int width = data.getShort(entry + NAME_SIZE) & 0xFFFF;
+        int height = data.getShort(entry + NAME_SIZE + 2) & 0xFFFF;
+        byte[][] columns = new byte[width][];
+        int[] offsets = new int[width];
+        for (int x = 0; x < width; x++) {
+            columns[x] = pixels;
+            offsets[x] = data.getInt(columnOffset(entry, x));
+        }
+        return new WallTexture(readName(entry), width, height, columns, offsets);
+    }
+
+    private int columnOffset(int textureEntry, int x) {
+        int columnsOffset = texturesOffset + textureCount * TEXTURE_ENTRY_SIZE;
+        return columnsOffset + (data.getInt(textureEntry + NAME_SIZE + 4) + x) * 4;
+    }
+
+    private synchronized byte[] pixels() {
+        if (pixels == null) {
+            pixels = new byte[pixelsSize];
+            data.get(pixelsOffset, pixels);
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,698 @@
+package com.dpforge.doom.wad;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ad hoc benchmarks of the WAD tools.
+ * The first argument selects the benchmark, the optional second one is the WAD file.
+ */
+public class Benchmark {
+
+    // sizes with compressed oops: array header, reference
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+
+    public static void main(String[] args) throws Exception {
+        String name = args.length > 0 ? args[0] : "memory";
+        File wadFile = new File(args.length > 1 ? args[1] : "../doom-jfx/doom2.wad");
+        switch (name) {
+            case "memory" -> memory(wadFile);
+            case "projection" -> projection(wadFile);
+            case "culling" -> culling(wadFile);
+            case "overdraw" -> overdraw(wadFile);
+            case "threads" -> threads(wadFile);
+            case "resolution" -> resolution(wadFile);
+            case "alloc" -> alloc(wadFile);
+            case "textures" -> textures(wadFile);
+            case "cache" -> cache(wadFile);
+            case "stack" -> stack(wadFile);
+            case "bsp" -> bsp(wadFile);
+            default -> throw new IllegalArgumentException("Unknown benchmark: " + name);
+        }
+    }
+
+    /**
+     * Heap taken by a fully decoded WAD and the share of pictures in it, compared with the former
+     * {@code Byte[height][width]} layout of {@link Graphic}.
+     */
+    private static void memory(File wadFile) throws Exception {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long before = memory.getHeapMemoryUsage().getUsed();
+        WadFile wad = new WadFileReader().read(wadFile);
+        System.gc();
+        long after = memory.getHeapMemoryUsage().getUsed();
+
+        long[] sizes = new long[3];
+        countGraphics(wad.directory, sizes);
+        System.out.format("Decoded WAD: %d KB of heap%n", (after - before) / 1024);
+        System.out.format("Pictures: %d, pixels: %d%n", sizes[0], sizes[1]);
+        System.out.format("Picture pixels now: %d KB, as Byte[][]: %d KB%n", sizes[2] / 1024, boxedSize(wad.directory) / 1024);
+        // keep the WAD reachable until after the measurement
+        System.out.println(wad.type);
+    }
+
+    /**
+     * Projects every vertex of MAP01 from a ring of camera positions with the fixed point math of
+     * {@link #fixedProjectPoint} and with the floating point math it replaced.
+     */
+    private static void projection(File wadFile) throws Exception {
+        WadFile wad = new WadFileReader().read(wadFile);
+        WadMap map = wad.maps.get("MAP01");
+        int[] xy = new int[2];
+        float[] ref = new float[2];
+        int maxError = 0;
+        long checksum = 0;
+        long fixedNanos = 0;
+        long floatNanos = 0;
+        for (int round = 0; round < 20; round++) {
+            for (int angle = 0; angle < 360; angle += 15) {
+                Vertex camera = map.vertexes[angle % map.vertexes.length];
+
+                long start = System.nanoTime();
+                for (Vertex v : map.vertexes) {
+                    if (fixedProjectPoint(camera.x(), camera.y(), angle, v.x(), v.y(), 0, xy)) {
+                        checksum += xy[0] + xy[1];
+                    }
+                }
+                fixedNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (Vertex v : map.vertexes) {
+                    if (floatProjectPoint(camera.x(), camera.y(), angle, v.x(), v.y(), 0, ref)) {
+                        checksum += (long) ref[0] + (long) ref[1];
+                    }
+                }
+                floatNanos += System.nanoTime() - start;
+
+                // accuracy near the screen only, far off-screen points are magnified by the division
+                for (Vertex v : map.vertexes) {
+                    boolean fixed = fixedProjectPoint(camera.x(), camera.y(), angle, v.x(), v.y(), 0, xy);
+                    boolean reference = floatProjectPoint(camera.x(), camera.y(), angle, v.x(), v.y(), 0, ref);
+                    if (fixed && reference && Math.abs(ref[0]) < 4 * 320 && Math.abs(ref[1]) < 4 * 240) {
+                        maxError = Math.max(maxError, Math.round(Math.max(Math.abs(xy[0] - ref[0]), Math.abs(xy[1] - ref[1]))));
+                    }
+                }
+            }
+        }
+        System.out.format("Fixed point: %.1f ms, floating point: %.1f ms%n", fixedNanos / 1e6, floatNanos / 1e6);
+        System.out.format("Max difference: %d px (checksum %d)%n", maxError, checksum);
+    }
+
+    // projection of a point to a 320x240 frame with a 90° view in fixed point, as GameRenderer once did it
+    private static boolean fixedProjectPoint(int cameraX, int cameraY, float cameraAngle, int x, int y, int z, int[] output) {
+        int viewAngle = Tables.toAngle(cameraAngle);
+        int viewCos = Tables.fineCosine(viewAngle);
+        int viewSin = Tables.fineSine(viewAngle);
+        int projection = (int) Math.round(320 / (2 * Math.tan(Math.toRadians(90) / 2)));
+        int tx = x - cameraX;
+        int ty = y - cameraY;
+        int tz = z - (56 + 56);
+        // both values are 16.16 fixed point, the side axis points right
+        long depth = (long) tx * viewCos + (long) ty * viewSin;
+        long side = (long) tx * viewSin - (long) ty * viewCos;
+        if (depth <= 0) return false;
+        output[0] = 320 / 2 + (int) Math.floorDiv(side * projection + depth / 2, depth);
+        output[1] = 240 / 2 + (int) Math.floorDiv((long) tz * FixedPoint.FRACUNIT * projection + depth / 2, depth);
+        return true;
+    }
+
+    // the former floating point GameRenderer.projectPoint, with the side axis pointing right
+    private static boolean floatProjectPoint(int cameraX, int cameraY, float cameraAngle, int x, int y, int z, float[] output) {
+        float cameraRad = (float) Math.toRadians(cameraAngle);
+        float xp = x - cameraX;
+        float yp = y - cameraY;
+        float zp = z - (56 + 56);
+        float depth = (float) (xp * Math.cos(cameraRad) + yp * Math.sin(cameraRad));
+        float side = (float) (xp * Math.sin(cameraRad) - yp * Math.cos(cameraRad));
+        if (depth <= 0) return false;
+        float s = (float) (320 / (2 * Math.tan(Math.toRadians(90) / 2)));
+        output[0] = 320 / 2f + side / depth * s;
+        output[1] = 240 / 2f + zp / depth * s;
+        return true;
+    }
+
+    /**
+     * Compares {@link GameRenderer#checkBBox} with the frustum test it replaced for every node of every map,
+     * seen from a grid of points over the map in several directions.
+     * Boxes rejected by the new check but accepted by the old one would be holes on the screen.
+     */
+    private static void culling(File wadFile) throws Exception {
+        WadFile wad = new WadFileReader().read(wadFile);
+        long agree = 0;
+        long onlyOld = 0;
+        long onlyNew = 0;
+        long newNanos = 0;
+        long oldNanos = 0;
+        for (WadMap map : wad.maps.values()) {
+            PackedMap packed = PackedMap.of(map);
+            GameRenderer renderer = new GameRenderer(wad, packed, new TextureManager(wad),
+                    GameRenderer.DEFAULT_WIDTH, GameRenderer.DEFAULT_HEIGHT, GameRenderer.DEFAULT_FOV);
+            BBox bounds = map.nodes[map.nodes.length - 1].rightBBox();
+            BBox left = map.nodes[map.nodes.length - 1].leftBBox();
+            int minX = Math.min(bounds.left(), left.left());
+            int maxX = Math.max(bounds.right(), left.right());
+            int minY = Math.min(bounds.bottom(), left.bottom());
+            int maxY = Math.max(bounds.top(), left.top());
+            // cameras in the middle of the cells of a 16x16 grid over the map
+            for (int cell = 0; cell < 16 * 16; cell++) {
+                int cameraX = minX + (2 * (cell % 16) + 1) * (maxX - minX) / 32;
+                int cameraY = minY + (2 * (cell / 16) + 1) * (maxY - minY) / 32;
+                for (int angle = 0; angle < 360; angle += 30) {
+                    renderer.setCamera(cameraX, cameraY, angle);
+                    for (int i = 0; i < map.nodes.length; i++) {
+                        Node node = map.nodes[i];
+                        for (int child = 0; child < 2; child++) {
+                            BBox bbox = child == 0 ? node.leftBBox() : node.rightBBox();
+                            int box = i * PackedMap.BBOX_FIELDS + (child == 0 ? PackedMap.LEFT_BBOX : 0);
+                            long start = System.nanoTime();
+                            boolean visible = renderer.checkBBox(packed.nodeBBox, box);
+                            newNanos += System.nanoTime() - start;
+                            start = System.nanoTime();
+                            boolean reference = isBoundingBoxInFrustum(cameraX, cameraY, angle, bbox);
+                            oldNanos += System.nanoTime() - start;
+                            if (visible == reference) {
+                                agree++;
+                            } else if (reference) {
+                                onlyOld++;
+                            } else {
+                                onlyNew++;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        System.out.format("Boxes: %d agree, %d visible only to the old test, %d visible only to the new one%n",
+                agree, onlyOld, onlyNew);
+        System.out.format("New: %.1f ms, old: %.1f ms%n", newNanos / 1e6, oldNanos / 1e6);
+    }
+
+    // the former GameRenderer.isBoundingBoxInFrustum
+    private static boolean isBoundingBoxInFrustum(int cameraX, int cameraY, float cameraAngle, BBox bbox) {
+        double leftAngle = Math.toRadians(cameraAngle) - Math.toRadians(90) / 2;
+        double rightAngle = Math.toRadians(cameraAngle) + Math.toRadians(90) / 2;
+        int[] xs = {bbox.left(), bbox.right(), bbox.left(), bbox.right()};
+        int[] ys = {bbox.top(), bbox.top(), bbox.bottom(), bbox.bottom()};
+        for (int i = 0; i < 4; i++) {
+            if (isPointInFrustum(cameraX, cameraY, xs[i], ys[i], leftAngle, rightAngle)) {
+                return true;
+            }
+        }
+        double leftEndX = cameraX + Math.cos(leftAngle) * 10000;
+        double leftEndY = cameraY + Math.sin(leftAngle) * 10000;
+        double rightEndX = cameraX + Math.cos(rightAngle) * 10000;
+        double rightEndY = cameraY + Math.sin(rightAngle) * 10000;
+        // box edges: top, right, bottom, left
+        int[][] edges = {{0, 1}, {1, 3}, {2, 3}, {0, 2}};
+        for (int[] e : edges) {
+            if (linesIntersect(cameraX, cameraY, leftEndX, leftEndY, xs[e[0]], ys[e[0]], xs[e[1]], ys[e[1]])
+                    || linesIntersect(cameraX, cameraY, rightEndX, rightEndY, xs[e[0]], ys[e[0]], xs[e[1]], ys[e[1]])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isPointInFrustum(int cameraX, int cameraY, int px, int py, double leftAngle, double rightAngle) {
+        double angleToPoint = normalizeAngle(Math.atan2(py - cameraY, px - cameraX));
+        leftAngle = normalizeAngle(leftAngle);
+        rightAngle = normalizeAngle(rightAngle);
+        if (leftAngle <= rightAngle) {
+            return angleToPoint >= leftAngle && angleToPoint <= rightAngle;
+        } else {
+            return angleToPoint >= leftAngle || angleToPoint <= rightAngle;
+        }
+    }
+
+    private static double normalizeAngle(double angle) {
+        while (angle < 0) angle += 2 * Math.PI;
+        while (angle >= 2 * Math.PI) angle -= 2 * Math.PI;
+        return angle;
+    }
+
+    private static boolean linesIntersect(double x1, double y1, double x2, double y2,
+                                          double x3, double y3, double x4, double y4) {
+        double d = (x1 - x2) * (y3 - y4) - (y1 - y2) * (x3 - x4);
+        if (d == 0) return false;
+        double t = ((x1 - x3) * (y3 - y4) - (y1 - y3) * (x3 - x4)) / d;
+        double u = ((x1 - x3) * (y1 - y2) - (y1 - y3) * (x1 - x2)) / d;
+        return t >= 0 && t <= 1 && u >= 0 && u <= 1;
+    }
+
+    /**
+     * Wall pixels written with and without occlusion on MAP01 to MAP32, looking around from the player start.
+     */
+    private static void overdraw(File wadFile) throws Exception {
+        WadFile wad = new WadFileReader().read(wadFile);
+        long totalWith = 0;
+        long totalWithout = 0;
+        for (int i = 1; i <= 32; i++) {
+            WadMap map = wad.maps.get(String.format("MAP%02d", i));
+            if (map == null) {
+                continue;
+            }
+            Thing start = null;
+            for (Thing t : map.things) {
+                if (t.type() == ThingType.PLAYER_1_START) {
+                    start = t;
+                    break;
+                }
+            }
+            if (start == null) {
+                continue;
+            }
+
+            GameRenderer renderer = new GameRenderer(wad, map);
+            long with = 0;
+            long without = 0;
+            for (int angle = 0; angle < 360; angle += 45) {
+                renderer.setCamera(start.x(), start.y(), start.angle() + angle);
+                renderer.occlusion = true;
+                renderer.render();
+                with += renderer.getStats().getWallPixels();
+                renderer.occlusion = false;
+                renderer.render();
+                without += renderer.getStats().getWallPixels();
+            }
+            System.out.format("%s: %d wall pixels, %d without occlusion, %.1f%% saved%n",
+                    map.name, with, without, 100.0 * (without - with) / Math.max(1, without));
+            totalWith += with;
+            totalWithout += without;
+        }
+        System.out.format("Total: %d wall pixels, %d without occlusion, %.1f%% saved%n",
+                totalWith, totalWithout, 100.0 * (totalWithout - totalWith) / Math.max(1, totalWithout));
+    }
+
+    /**
+     * Average frame time on MAP01 to MAP32 looking around from the player start, drawn on 1, 2, 4 and so on
+     * up to all available threads.
+     */
+    private static void threads(File wadFile) throws Exception {
+        WadFile wad = new WadFileReader().read(wadFile);
+        List<GameRenderer> renderers = new ArrayList<>();
+        List<Thing> starts = new ArrayList<>();
+        for (int i = 1; i <= 32; i++) {
+            WadMap map = wad.maps.get(String.format("MAP%02d", i));
+            if (map == null) {
+                continue;
+            }
+            for (Thing t : map.things) {
+                if (t.type() == ThingType.PLAYER_1_START) {
+                    renderers.add(new GameRenderer(wad, map));
+                    starts.add(t);
+                    break;
+                }
+            }
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+            for (GameRenderer renderer : renderers) {
+                renderer.setThreads(threads);
+            }
+            long frames = 0;
+            long nanos = 0;
+            for (int round = 0; round < 5; round++) {
+                // the first round warms up
+                boolean measure = round > 0;
+                for (int i = 0; i < renderers.size(); i++) {
+                    GameRenderer renderer = renderers.get(i);
+                    Thing start = starts.get(i);
+                    for (int angle = 0; angle < 360; angle += 45) {
+                        renderer.setCamera(start.x(), start.y(), start.angle() + angle);
+                        long time = System.nanoTime();
+                        renderer.render();
+                        if (measure) {
+                            nanos += System.nanoTime() - time;
+                            frames++;
+                        }
+                    }
+                }
+            }
+            System.out.format("%d threads: %.3f ms per frame%n", threads, nanos / 1e6 / Math.max(1, frames));
+            if (threads == cores) {
+                break;
+            }
+        }
+        for (GameRenderer renderer : renderers) {
+            renderer.setThreads(1);
+        }
+    }
+
+    /**
+     * Average frame time on MAP01 to MAP32 looking around from the player start at several frame sizes,
+     * drawn on one thread and on all available threads.
+     */
+    private static void resolution(File wadFile) throws Exception {
+        WadFile wad = new WadFileReader().read(wadFile);
+        int[][] sizes = {{320, 240}, {640, 480}, {1280, 960}, {1920, 1080}};
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int[] size : sizes) {
+            for (int threads : cores > 1 ? new int[]{1, cores} : new int[]{1}) {
+                long frames = 0;
+                long nanos = 0;
+                for (int i = 1; i <= 32; i++) {
+                    WadMap map = wad.maps.get(String.format("MAP%02d", i));
+                    Thing start = map == null ? null : playerStart(map);
+                    if (start == null) {
+                        continue;
+                    }
+                    GameRenderer renderer = new GameRenderer(wad, map, size[0], size[1], GameRenderer.DEFAULT_FOV);
+                    renderer.setThreads(threads);
+                    for (int round = 0; round < 3; round++) {
+                        // the first round warms up
+                        boolean measure = round > 0;
+                        for (int angle = 0; angle < 360; angle += 45) {
+                            renderer.setCamera(start.x(), start.y(), start.angle() + angle);
+                            long time = System.nanoTime();
+                            renderer.render();
+                            if (measure) {
+                                nanos += System.nanoTime() - time;
+                                frames++;
+                            }
+                        }
+                    }
+                    renderer.setThreads(1);
+                }
+                System.out.format("%dx%d, %d threads: %.3f ms per frame%n",
+                        size[0], size[1], threads, nanos / 1e6 / Math.max(1, frames));
+            }
+        }
+    }
+
+    /**
+     * Bytes allocated by the rendering thread per frame on MAP01 to MAP32 once the renderer has warmed up,
+     * and the average phase timings. Exits with status 1 if a warmed up frame allocates anything.
+     */
+    private static void alloc(File wadFile) throws Exception {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        WadFile wad = new WadFileReader().read(wadFile);
+        long allocated = 0;
+        long frames = 0;
+        long[] nanos = new long[6];
+        for (int i = 1; i <= 32; i++) {
+            WadMap map = wad.maps.get(String.format("MAP%02d", i));
+            Thing start = map == null ? null : playerStart(map);
+            if (start == null) {
+                continue;
+            }
+            GameRenderer renderer = new GameRenderer(wad, map);
+            RenderStats stats = renderer.getStats();
+            long mapAllocated = 0;
+            for (int round = 0; round < 4; round++) {
+                // the first rounds grow the pools and let the JIT settle
+                boolean measure = round > 1;
+                for (int angle = 0; angle < 360; angle += 45) {
+                    renderer.setCamera(start.x(), start.y(), start.angle() + angle);
+                    long before = threadBean.getCurrentThreadAllocatedBytes();
+                    renderer.render();
+                    long after = threadBean.getCurrentThreadAllocatedBytes();
+                    if (measure) {
+                        mapAllocated += after - before;
+                        frames++;
+                        nanos[0] += stats.getFrameNanos();
+                        nanos[1] += stats.getBspNanos();
+                        nanos[2] += stats.getWallNanos();
+                        nanos[3] += stats.getPlaneNanos();
+                        nanos[4] += stats.getSpriteNanos();
+                        nanos[5] += stats.getPresentNanos();
+                    }
+                }
+            }
+            System.out.format("%s: %d bytes allocated%n", map.name, mapAllocated);
+            allocated += mapAllocated;
+        }
+
+        double perFrame = 1e3 * Math.max(1, frames);
+        System.out.format("Average frame %.1f us: BSP %.1f us (walls %.1f us), planes %.1f us, sprites %.1f us, present %.1f us%n",
+                nanos[0] / perFrame, nanos[1] / perFrame, nanos[2] / perFrame,
+                nanos[3] / perFrame, nanos[4] / perFrame, nanos[5] / perFrame);
+        System.out.format("%d bytes allocated in %d frames%n", allocated, frames);
+        if (allocated > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Time to load MAP01 to MAP32 one after another with textures composed on demand by one shared
+     * {@link TextureManager}, compared with composing every texture of the WAD up front.
+     */
+    private static void textures(File wadFile) throws Exception {
+        WadFile wad = new WadFileReader().read(wadFile);
+
+        long start = System.nanoTime();
+        TextureManager eager = new TextureManager(wad);
+        for (String name : wad.textures.keySet()) {
+            eager.get(name);
+        }
+        long eagerNanos = System.nanoTime() - start;
+        System.out.format("All %d textures: %.1f ms, %d KB composed%n",
+                wad.textures.size(), eagerNanos / 1e6, eager.getCacheWeight() / 1024);
+
+        TextureManager textures = new TextureManager(wad);
+        int maps = 0;
+        start = System.nanoTime();
+        for (int i = 1; i <= 32; i++) {
+            WadMap map = wad.maps.get(String.format("MAP%02d", i));
+            if (map == null) {
+                continue;
+            }
+            long misses = textures.getMisses();
+            long mapStart = System.nanoTime();
+            new GameRenderer(wad, map, textures, GameRenderer.DEFAULT_WIDTH, GameRenderer.DEFAULT_HEIGHT,
+                    GameRenderer.DEFAULT_FOV);
+            System.out.format("%s: %.1f ms, %d textures composed%n",
+                    map.name, (System.nanoTime() - mapStart) / 1e6, textures.getMisses() - misses);
+            maps++;
+        }
+        System.out.format("%d maps: %.1f ms, %d hits, %d misses, %d KB cached%n",
+                maps, (System.nanoTime() - start) / 1e6,
+                textures.getHits(), textures.getMisses(), textures.getCacheWeight() / 1024);
+    }
+
+    /**
+     * Time to get every composed texture of the WAD by parsing it from scratch, by building the {@link AssetCache}
+     * and by opening the cache again, with the cache kept in a temporary directory. The parse goes through
+     * {@link MappedWadFile}, {@link WadFileReader} logs every lump and that would be timed too.
+     */
+    private static void cache(File wadFile) throws Exception {
+        long start = System.nanoTime();
+        MappedWadFile wad = MappedWadFile.open(wadFile);
+        TextureManager textures = new TextureManager(wad);
+        for (String name : wad.getTextures().keySet()) {
+            textures.get(name);
+        }
+        long coldNanos = System.nanoTime() - start;
+
+        File cacheDir = Files.createTempDirectory("wad-cache").toFile();
+        try {
+            start = System.nanoTime();
+            AssetCache.open(wadFile, cacheDir);
+            long buildNanos = System.nanoTime() - start;
+
+            long warmNanos = 0;
+            int rounds = 5;
+            long checksum = 0;
+            for (int round = 0; round < rounds; round++) {
+                start = System.nanoTime();
+                AssetCache cache = AssetCache.open(wadFile, cacheDir);
+                for (String name : cache.getTextureNames()) {
+                    checksum += cache.getTexture(name).getPixel(0, 0);
+                }
+                warmNanos += System.nanoTime() - start;
+            }
+            File[] files = cacheDir.listFiles();
+            long cacheSize = files != null && files.length > 0 ? files[0].length() : 0;
+            System.out.format("Cold parse: %.1f ms%n", coldNanos / 1e6);
+            System.out.format("Cache build: %.1f ms, %d KB%n", buildNanos / 1e6, cacheSize / 1024);
+            System.out.format("Warm open: %.1f ms (checksum %d)%n", warmNanos / 1e6 / rounds, checksum);
+        } finally {
+            FileUtil.deleteDirectory(cacheDir);
+        }
+    }
+
+    /**
+     * Time to resolve every lump name of the WAD in a {@link ResourceStack} of the WAD stacked over itself
+     * 1 to 64 times, lookups shouldn't get slower as files are added.
+     */
+    private static void stack(File wadFile) throws Exception {
+        MappedWadFile wad = MappedWadFile.open(wadFile);
+        String[] names = new String[wad.getLumpCount()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = wad.getLump(i).name();
+        }
+        for (int files : new int[]{1, 4, 16, 64}) {
+            List<MappedWadFile> wads = new ArrayList<>();
+            for (int i = 0; i < files; i++) {
+                wads.add(wad);
+            }
+            long start = System.nanoTime();
+            ResourceStack stack = new ResourceStack(wads);
+            long indexNanos = System.nanoTime() - start;
+
+            int rounds = 200;
+            long found = 0;
+            start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (String name : names) {
+                    if (stack.findLump(name) != null) {
+                        found++;
+                    }
+                    if (stack.findLump(ResourceStack.Namespace.FLATS, name) != null) {
+                        found++;
+                    }
+                }
+            }
+            long lookupNanos = System.nanoTime() - start;
+            System.out.format("%d files: index %.1f ms, %.1f ns per lookup (%d found)%n",
+                    files, indexNanos / 1e6, lookupNanos / (2.0 * rounds * names.length), found);
+        }
+    }
+
+    /**
+     * Load time and BSP walk time of the three maps with the most nodes, as records ({@link WadMap})
+     * and as arrays per field ({@link PackedMap}). The walk visits every node from a grid of camera positions,
+     * the near side first, and tests the camera against the boxes of both children like the renderer does.
+     */
+    private static void bsp(File wadFile) throws Exception {
+        MappedWadFile wad = MappedWadFile.open(wadFile);
+        List<WadMap> maps = new ArrayList<>();
+        for (String name : wad.getMapNames()) {
+            maps.add(wad.getMap(name));
+        }
+        maps.sort((a, b) -> Integer.compare(b.nodes.length, a.nodes.length));
+
+        int rounds = 20;
+        for (WadMap biggest : maps.subList(0, Math.min(3, maps.size()))) {
+            String name = biggest.name;
+            long recordLoadNanos = 0;
+            long packedLoadNanos = 0;
+            WadMap map = null;
+            PackedMap packed = null;
+            for (int round = 0; round < rounds; round++) {
+                // new files every round, one per variant, so nothing comes from the lump cache and neither load
+                // touches pages the other one has mapped already; the order alternates for what the OS caches
+                MappedWadFile recordFile = MappedWadFile.open(wadFile);
+                MappedWadFile packedFile = MappedWadFile.open(wadFile);
+                for (int variant = 0; variant < 2; variant++) {
+                    long start = System.nanoTime();
+                    if ((round + variant) % 2 == 0) {
+                        map = recordFile.getMap(name);
+                        recordLoadNanos += System.nanoTime() - start;
+                    } else {
+                        packed = packedFile.getPackedMap(name);
+                        packedLoadNanos += System.nanoTime() - start;
+                    }
+                }
+            }
+
+            int[] minMax = vertexBounds(packed);
+            long checksum = 0;
+            long recordWalkNanos = 0;
+            long packedWalkNanos = 0;
+            for (int round = 0; round < rounds; round++) {
+                for (int x = minMax[0]; x <= minMax[2]; x += (minMax[2] - minMax[0]) / 8 + 1) {
+                    for (int y = minMax[1]; y <= minMax[3]; y += (minMax[3] - minMax[1]) / 8 + 1) {
+                        long start = System.nanoTime();
+                        checksum += walkRecords(map, map.nodes.length - 1, x, y);
+                        recordWalkNanos += System.nanoTime() - start;
+                        start = System.nanoTime();
+                        checksum -= walkPacked(packed, packed.nodeX.length - 1, x, y);
+                        packedWalkNanos += System.nanoTime() - start;
+                    }
+                }
+            }
+            System.out.format("%s, %d nodes: load %.2f ms as records, %.2f ms packed; walk %.2f ms as records, %.2f ms packed (checksum %d)%n",
+                    name, map.nodes.length, recordLoadNanos / 1e6 / rounds, packedLoadNanos / 1e6 / rounds,
+                    recordWalkNanos / 1e6 / rounds, packedWalkNanos / 1e6 / rounds, checksum);
+        }
+    }
+
+    private static int[] vertexBounds(PackedMap map) {
+        int[] result = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+        for (int i = 0; i < map.vertexX.length; i++) {
+            result[0] = Math.min(result[0], map.vertexX[i]);
+            result[1] = Math.min(result[1], map.vertexY[i]);
+            result[2] = Math.max(result[2], map.vertexX[i]);
+            result[3] = Math.max(result[3], map.vertexY[i]);
+        }
+        return result;
+    }
+
+    // number of children whose box holds the camera, over the whole tree
+    private static int walkRecords(WadMap map, int child, int x, int y) {
+        if ((child & PackedMap.NF_SUBSECTOR) != 0) {
+            return 0;
+        }
+        Node node = map.nodes[child];
+        long side = (long) (x - node.partitionLineX()) * node.partitionLineDY()
+                - (long) (y - node.partitionLineY()) * node.partitionLineDX();
+        int inside = isInside(node.rightBBox(), x, y) + isInside(node.leftBBox(), x, y);
+        if (side > 0) {
+            return inside + walkRecords(map, node.rightChild(), x, y) + walkRecords(map, node.leftChild(), x, y);
+        }
+        return inside + walkRecords(map, node.leftChild(), x, y) + walkRecords(map, node.rightChild(), x, y);
+    }
+
+    private static int isInside(BBox box, int x, int y) {
+        return x >= box.left() && x < box.right() && y > box.bottom() && y <= box.top() ? 1 : 0;
+    }
+
+    private static int walkPacked(PackedMap map, int child, int x, int y) {
+        if ((child & PackedMap.NF_SUBSECTOR) != 0) {
+            return 0;
+        }
+        long side = (long) (x - map.nodeX[child]) * map.nodeDY[child]
+                - (long) (y - map.nodeY[child]) * map.nodeDX[child];
+        int box = child * PackedMap.BBOX_FIELDS;
+        int inside = isInside(map.nodeBBox, box, x, y) + isInside(map.nodeBBox, box + PackedMap.LEFT_BBOX, x, y);
+        if (side > 0) {
+            return inside + walkPacked(map, map.nodeRightChild[child], x, y) + walkPacked(map, map.nodeLeftChild[child], x, y);
+        }
+        return inside + walkPacked(map, map.nodeLeftChild[child], x, y) + walkPacked(map, map.nodeRightChild[child], x, y);
+    }
+
+    private static int isInside(int[] boxes, int box, int x, int y) {
+        return x >= boxes[box + PackedMap.BOX_LEFT] && x < boxes[box + PackedMap.BOX_RIGHT]
+                && y > boxes[box + PackedMap.BOX_BOTTOM] && y <= boxes[box + PackedMap.BOX_TOP] ? 1 : 0;
+    }
+
+    private static Thing playerStart(WadMap map) {
+        for (Thing t : map.things) {
+            if (t.type() == ThingType.PLAYER_1_START) {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    private static void countGraphics(WadDirectory directory, long[] sizes) {
+        for (Graphic graphic : directory.graphics.values()) {
+            sizes[0]++;
+            sizes[1] += (long) graphic.width() * graphic.height();
+            sizes[2] += ARRAY_HEADER + graphic.pixels().length + ARRAY_HEADER + 8L * graphic.opaque().length;
+        }
+        for (WadDirectory d : directory.directories) {
+            countGraphics(d, sizes);
+        }
+    }
+
+    // Byte[height][width] with a reference per pixel; Byte.valueOf shares instances, so boxes themselves are free
+    private static long boxedSize(WadDirectory directory) {
+        long size = 0;
+        for (Graphic graphic : directory.graphics.values()) {
+            long row = ARRAY_HEADER + (long) REFERENCE * graphic.width();
+            size += ARRAY_HEADER + (long) REFERENCE * graphic.height() + row * graphic.height();
+        }
+        for (WadDirectory d : directory.directories) {
+            size += boxedSize(d);
+        }
+        return size;
+    }
+}
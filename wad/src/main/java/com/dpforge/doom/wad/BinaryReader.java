@@ -9,7 +9,14 @@ public class BinaryReader {
     private ByteBuffer buffer;
 
     public BinaryReader(byte[] data) {
-        buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        this(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Reads the buffer from its current position without copying it, e.g. a slice of a mapped file.
+     */
+    public BinaryReader(ByteBuffer data) {
+        buffer = data.slice().order(ByteOrder.LITTLE_ENDIAN);
     }
 
     public int getOffset() {
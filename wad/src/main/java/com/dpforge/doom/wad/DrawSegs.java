@@ -0,0 +1,109 @@
+package com.dpforge.doom.wad;
+
+import java.util.Arrays;
+
+/**
+ * Walls drawn in the current frame, kept to clip sprites against them, see drawsegs in r_bsp.c.
+ * <p>
+ * Segs come from a pool that is reset every frame. The rows a seg leaves free above and below it are copied
+ * into one shared array of openings, so recording a seg doesn't allocate once the pool and the openings have grown
+ * to the size of a busy frame.
+ */
+class DrawSegs {
+
+    // which sides of a seg hide sprites behind it
+    static final int SIL_NONE = 0;
+    static final int SIL_BOTTOM = 1;
+    static final int SIL_TOP = 2;
+    static final int SIL_BOTH = 3;
+
+    // clip offset of a seg that doesn't clip sprites on that side
+    static final int NO_CLIP = Integer.MIN_VALUE;
+
+    private final int width;
+    private DrawSeg[] pool = new DrawSeg[256];
+    private int count;
+
+    // clip rows of the segs, see openings in r_plane.c
+    private int[] openings;
+    private int openingCount;
+    // offsets of the openings that clip every row of a column from below and from above
+    final int screenHeightClip;
+    final int negativeOneClip;
+
+    DrawSegs(int width, int height) {
+        this.width = width;
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = new DrawSeg();
+        }
+        openings = new int[width * 64];
+        Arrays.fill(openings, 0, width, height);
+        Arrays.fill(openings, width, 2 * width, -1);
+        screenHeightClip = 0;
+        negativeOneClip = width;
+        clear();
+    }
+
+    void clear() {
+        count = 0;
+        openingCount = 2 * width;
+    }
+
+    int count() {
+        return count;
+    }
+
+    DrawSeg get(int index) {
+        return pool[index];
+    }
+
+    DrawSeg add() {
+        if (count == pool.length) {
+            pool = Arrays.copyOf(pool, pool.length * 2);
+            for (int i = count; i < pool.length; i++) {
+                pool[i] = new DrawSeg();
+            }
+        }
+        return pool[count++];
+    }
+
+    /**
+     * Copies columns {@code start} to {@code stop} of the clip and returns the offset
+     * at which column x of the copy is found.
+     */
+    int store(int[] clip, int start, int stop) {
+        int length = stop - start + 1;
+        if (openingCount + length > openings.length) {
+            openings = Arrays.copyOf(openings, Math.max(openings.length * 2, openingCount + length));
+        }
+        System.arraycopy(clip, start, openings, openingCount, length);
+        int offset = openingCount - start;
+        openingCount += length;
+        return offset;
+    }
+
+    int opening(int offset, int x) {
+        return openings[offset + x];
+    }
+
+    static final class DrawSeg {
+        // index of the seg in the map
+        int seg;
+        int x1;
+        int x2;
+        // scales of the first and the last column
+        int scale1;
+        int scale2;
+        int silhouette;
+        // sprites standing at or above this height are not hidden by the bottom of the seg
+        int bottomSilHeight;
+        // sprites ending at or below this height are not hidden by the top of the seg
+        int topSilHeight;
+        // offsets of the clip rows in the openings, NO_CLIP if the seg doesn't clip on that side
+        int topClip;
+        int bottomClip;
+
+        private DrawSeg() {
+        }
+    }
+}
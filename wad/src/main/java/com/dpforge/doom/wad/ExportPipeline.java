@@ -0,0 +1,282 @@
+package com.dpforge.doom.wad;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Exports graphics, flats, textures and sounds of a WAD to files.
+ * <p>
+ * Every resource goes through a chain of stages run on a work-stealing pool: the lump is decoded, converted to colors
+ * of the palette and encoded to a file. Textures are composed from the converted patches as soon as all
+ * of their patches are ready. Only a few files are written at once, so encoding doesn't flood the disk.
+ */
+public class ExportPipeline {
+
+    public enum Stage {
+        DECODE, CONVERT, COMPOSE, ENCODE
+    }
+
+    private static final int MAX_WRITES = 4;
+    // lumps which are not resources, they are read by the game itself
+    private static final Set<String> SKIPPED_LUMPS = Set.of(
+            "THINGS", "LINEDEFS", "SIDEDEFS", "VERTEXES", "SEGS",
+            "SSECTORS", "NODES", "SECTORS", "REJECT", "BLOCKMAP",
+            "TEXTURE1", "TEXTURE2", "PNAMES", "GENMIDI", "DMXGUS", "DMXGUSC",
+            "PLAYPAL", "COLORMAP", "ENDOOM", "DEMO1", "DEMO2", "DEMO3"
+    );
+
+    private final MappedWadFile wad;
+    private final File output;
+    private final boolean writeFiles;
+    private final int threads;
+
+    private final GraphicRenderer graphicRenderer = new GraphicRenderer();
+    private final SoundRenderer soundRenderer = new SoundRenderer();
+    private final Semaphore writes = new Semaphore(MAX_WRITES);
+    // converted graphics, flats and textures by lump name
+    private final Map<String, BufferedImage> graphics = new ConcurrentHashMap<>();
+
+    private final Map<Stage, LongAdder> stageNanos = new EnumMap<>(Stage.class);
+    private final Map<Stage, LongAdder> stageCounts = new EnumMap<>(Stage.class);
+    private long elapsedNanos;
+
+    /**
+     * @param writeFiles whether to write the resources, they are still decoded and converted if not
+     * @param threads    number of threads of the pool
+     */
+    public ExportPipeline(MappedWadFile wad, File output, boolean writeFiles, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+        }
+        this.wad = wad;
+        this.output = output;
+        this.writeFiles = writeFiles;
+        this.threads = threads;
+        for (Stage stage : Stage.values()) {
+            stageNanos.put(stage, new LongAdder());
+            stageCounts.put(stage, new LongAdder());
+        }
+    }
+
+    public void run() throws IOException, WadException {
+        long start = System.nanoTime();
+        graphicRenderer.setPalette(wad.getPalettes()[0]);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<CompletableFuture<?>> tasks = new ArrayList<>();
+            // pictures by upper case name, the last lump with a name wins
+            Map<String, CompletableFuture<BufferedImage>> pictures = new HashMap<>();
+            submitLumps(pool, tasks, pictures);
+            submitTextures(pool, tasks, pictures);
+            join(CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])));
+        } finally {
+            pool.shutdown();
+            elapsedNanos = System.nanoTime() - start;
+        }
+    }
+
+    private void submitLumps(ForkJoinPool pool, List<CompletableFuture<?>> tasks,
+                             Map<String, CompletableFuture<BufferedImage>> pictures) throws WadException {
+        Deque<File> dirStack = new ArrayDeque<>();
+        File dir = new File(output, "lumps");
+        String dirName = "";
+        Deque<String> nameStack = new ArrayDeque<>();
+        for (int i = 0; i < wad.getLumpCount(); i++) {
+            WadLump lump = wad.getLump(i);
+            String name = lump.name();
+            if (lump.size() == 0) {
+                if (WadFileReader.isMapName(name)) {
+                    continue;
+                } else if (name.endsWith("_START")) {
+                    dirStack.push(dir);
+                    nameStack.push(dirName);
+                    dirName = name.replace("_START", "");
+                    dir = new File(dir, dirName);
+                } else if (name.endsWith("_END")) {
+                    if (!dirStack.isEmpty()) {
+                        dir = dirStack.pop();
+                        dirName = nameStack.pop();
+                    }
+                }
+                continue;
+            }
+            if (SKIPPED_LUMPS.contains(name) || name.startsWith("DP") || name.startsWith("D_")) {
+                continue;
+            }
+
+            if (name.startsWith("DS")) {
+                if (writeFiles) {
+                    File file = new File(dir, String.format("sound/%s.wav", name));
+                    tasks.add(CompletableFuture
+                            .supplyAsync(() -> timed(Stage.DECODE, () -> lump.decode(LumpDecoder.RAW)), pool)
+                            .thenAcceptAsync(data -> timed(Stage.ENCODE, () -> writeSound(data, file)), pool));
+                }
+            } else if (dirName.startsWith("F")) {
+                File file = new File(dir, String.format("flat/%s.png", name));
+                tasks.add(CompletableFuture
+                        .supplyAsync(() -> timed(Stage.DECODE, () -> lump.decode(LumpDecoder.FLAT)), pool)
+                        .thenApplyAsync(flat -> timed(Stage.CONVERT, () -> convert(name, graphicRenderer.render(flat))), pool)
+                        .thenAcceptAsync(image -> timed(Stage.ENCODE, () -> writeImage(image, file)), pool));
+            } else {
+                File file = new File(dir, String.format("graphics/%s.png", name));
+                CompletableFuture<BufferedImage> picture = CompletableFuture
+                        .supplyAsync(() -> timed(Stage.DECODE, () -> lump.decode(LumpDecoder.PICTURE)), pool)
+                        .thenApplyAsync(graphic -> timed(Stage.CONVERT,
+                                () -> convert(name, graphicRenderer.render(graphic))), pool);
+                pictures.put(name, picture);
+                tasks.add(picture.thenAcceptAsync(image -> timed(Stage.ENCODE, () -> writeImage(image, file)), pool));
+            }
+        }
+    }
+
+    private void submitTextures(ForkJoinPool pool, List<CompletableFuture<?>> tasks,
+                                Map<String, CompletableFuture<BufferedImage>> pictures) throws WadException {
+        if (wad.findLump("PNAMES") == null) {
+            return;
+        }
+        String[] pnames = wad.getPNames();
+        File dir = new File(output, "textures");
+        for (Texture texture : wad.getTextures().values()) {
+            // the pictures the texture waits for are the ones it is composed from, so a name used by several
+            // lumps always gives the last of them, whichever was converted first
+            Map<String, CompletableFuture<BufferedImage>> required = new HashMap<>();
+            for (TexturePatch p : texture.patches()) {
+                String name = pnames[p.patchNumber()].toUpperCase();
+                // a missing patch leaves a hole in the texture like it did before
+                CompletableFuture<BufferedImage> picture = pictures.get(name);
+                if (picture != null) {
+                    required.put(name, picture);
+                }
+            }
+            File file = new File(dir, String.format("%s.png", texture.name()));
+            tasks.add(CompletableFuture.allOf(required.values().toArray(new CompletableFuture<?>[0]))
+                    .thenApplyAsync(ignored -> timed(Stage.COMPOSE, () -> convert(texture.name(),
+                            graphicRenderer.render(texture, pnames, joinAll(required)))), pool)
+                    .thenAcceptAsync(image -> timed(Stage.ENCODE, () -> writeImage(image, file)), pool));
+        }
+    }
+
+    // results of futures which are already complete
+    private static Map<String, BufferedImage> joinAll(Map<String, CompletableFuture<BufferedImage>> futures) {
+        Map<String, BufferedImage> result = new HashMap<>();
+        futures.forEach((name, future) -> result.put(name, future.join()));
+        return result;
+    }
+
+    private BufferedImage convert(String name, BufferedImage image) {
+        graphics.put(name, image);
+        return image;
+    }
+
+    private Void writeImage(BufferedImage image, File file) throws IOException, InterruptedException {
+        if (writeFiles) {
+            writes.acquire();
+            try {
+                FileUtil.ensureParentExist(file);
+                ImageIO.write(image, "PNG", file);
+            } finally {
+                writes.release();
+            }
+        }
+        return null;
+    }
+
+    private Void writeSound(byte[] data, File file) throws IOException, InterruptedException {
+        writes.acquire();
+        try {
+            FileUtil.ensureParentExist(file);
+            soundRenderer.renderWav(file, data);
+        } finally {
+            writes.release();
+        }
+        return null;
+    }
+
+    private <T> T timed(Stage stage, Step<T> step) {
+        long start = System.nanoTime();
+        try {
+            return step.run();
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        } finally {
+            stageNanos.get(stage).add(System.nanoTime() - start);
+            stageCounts.get(stage).increment();
+        }
+    }
+
+    private static void join(CompletableFuture<?> future) throws IOException, WadException {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            } else if (cause instanceof WadException wad) {
+                throw wad;
+            } else if (cause instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Export is interrupted", cause);
+            } else if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Converted graphics, flats and textures by name.
+     */
+    public Map<String, BufferedImage> getGraphics() {
+        return graphics;
+    }
+
+    /**
+     * Time the threads spent in the stage, summed over all of them, so it can be longer than the whole run.
+     */
+    public long getStageNanos(Stage stage) {
+        return stageNanos.get(stage).sum();
+    }
+
+    /**
+     * Resources which went through the stage.
+     */
+    public long getStageCount(Stage stage) {
+        return stageCounts.get(stage).sum();
+    }
+
+    /**
+     * Wall clock time of the last run.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Resources exported per second in the last run, textures included.
+     */
+    public double getResourcesPerSecond() {
+        long count = getStageCount(Stage.CONVERT) + getStageCount(Stage.COMPOSE);
+        return elapsedNanos == 0 ? 0 : count * 1e9 / elapsedNanos;
+    }
+
+    @FunctionalInterface
+    private interface Step<T> {
+        T run() throws Exception;
+    }
+}
@@ -0,0 +1,24 @@
+package com.dpforge.doom.wad;
+
+/**
+ * 16.16 fixed point math, see m_fixed.c.
+ */
+final class FixedPoint {
+
+    static final int FRACBITS = 16;
+    static final int FRACUNIT = 1 << FRACBITS;
+
+    private FixedPoint() {
+    }
+
+    static int mul(int a, int b) {
+        return (int) (((long) a * b) >> FRACBITS);
+    }
+
+    static int div(int a, int b) {
+        if ((Math.abs(a) >> 14) >= Math.abs(b)) {
+            return (a ^ b) < 0 ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        }
+        return (int) (((long) a << FRACBITS) / b);
+    }
+}
@@ -1,32 +1,132 @@
 package com.dpforge.doom.wad;
 
 import java.awt.Color;
-import java.awt.Graphics2D;
-import java.awt.RenderingHints;
-import java.awt.geom.Path2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.dpforge.doom.wad.FixedPoint.FRACBITS;
+import static com.dpforge.doom.wad.FixedPoint.FRACUNIT;
+import static com.dpforge.doom.wad.DrawSegs.DrawSeg;
+import static com.dpforge.doom.wad.DrawSegs.NO_CLIP;
+import static com.dpforge.doom.wad.DrawSegs.SIL_BOTH;
+import static com.dpforge.doom.wad.DrawSegs.SIL_BOTTOM;
+import static com.dpforge.doom.wad.DrawSegs.SIL_NONE;
+import static com.dpforge.doom.wad.DrawSegs.SIL_TOP;
+import static com.dpforge.doom.wad.Tables.ANG180;
+import static com.dpforge.doom.wad.Tables.ANG45;
+import static com.dpforge.doom.wad.Tables.ANG90;
+import static com.dpforge.doom.wad.Tables.ANGLETOFINESHIFT;
+import static com.dpforge.doom.wad.Tables.FINEANGLES;
+import static com.dpforge.doom.wad.VisPlanes.UNUSED;
+import static com.dpforge.doom.wad.VisPlanes.VisPlane;
+import static com.dpforge.doom.wad.VisSprites.VisSprite;
 
 public class GameRenderer {
 
-    private static final int SSECTOR_MASK = 0x7FFF;
     // FOV (Field of View) is the angular width of the player's vision in the game world.
     // It determines how much of the environment is visible on the screen at a given moment.
     // Doom's FOV is fixed at 90° (by default). This means the player can see a 90-degree cone in front of them.
     // Doom's default FOV is 90 degrees, which in BAM is (90/360) * 2³² = 0x40000000.
-    private static final float FOV = 90f;
-
-    private static final int SCREEN_WIDTH = 320;
-    private static final int SCREEN_HEIGHT = 240;
+    public static final float DEFAULT_FOV = 90f;
+    // wider views would need tangents beyond the range viewAngleToX is built from
+    public static final float MAX_FOV = 120f;
+
+    public static final int DEFAULT_WIDTH = 320;
+    public static final int DEFAULT_HEIGHT = 240;
+    // the light tables are tuned for a screen this wide, see R_InitLightTables
+    private static final int BASE_WIDTH = 320;
     private static final int PLAYER_HEIGHT = 56;
     private static final boolean NO_TEXTURING = false;
-
-    private final WadMap map;
-    private final Map<String, BufferedImage> graphics;
-
-    private final Path2D polygon = new Path2D.Double();
+    private static final int NO_TEXTURE = -1;
+    private static final int FLAT_SIZE = 64;
+    // palette index of the walls drawn without textures
+    private static final byte UNTEXTURED_COLOR = (byte) 0x5C;
+    // palette index the screen is cleared to, shows through gaps in the map
+    private static final byte BACKGROUND_COLOR = 0;
+
+    // light levels of sectors are reduced to this many steps, see r_main.h
+    private static final int LIGHTLEVELS = 16;
+    private static final int LIGHTSEGSHIFT = 4;
+    // walls are lit by their scale, planes by their distance
+    private static final int MAXLIGHTSCALE = 48;
+    private static final int LIGHTSCALESHIFT = 12;
+    private static final int MAXLIGHTZ = 128;
+    private static final int LIGHTZSHIFT = 20;
+    // colormaps from full brightness to black, the ones after them are for special effects
+    private static final int NUMCOLORMAPS = 32;
+    private static final int COLORMAP_SIZE = 256;
+    private static final int DISTMAP = 2;
+
+    // ints per recorded wall column: x, yl, yh, texture mid, texture column, texture step, colormap
+    private static final int COLUMN_FIELDS = 7;
+    // ints per recorded span: y, x1, x2, x fraction, y fraction, x step, y step, colormap
+    private static final int SPAN_FIELDS = 8;
+
+    // screen rows of wall edges are stepped with this many fractional bits
+    private static final int HEIGHTBITS = 12;
+    private static final int HEIGHTUNIT = 1 << HEIGHTBITS;
+
+    // sprites nearer than this are not drawn, 16.16 fixed point
+    private static final int MINZ = 4 * FRACUNIT;
+    // thing flags, only things of Hurt Me Plenty single player games are drawn
+    private static final int MTF_NORMAL = 2;
+    private static final int MTF_NOTSINGLE = 16;
+
+    // back sector of a one sided line
+    private static final int NO_SECTOR = -1;
+    // linedef flags
+    private static final int ML_DONTPEGTOP = 8;
+    private static final int ML_DONTPEGBOTTOM = 16;
+
+    // indexes of the bounding box sides in a box of PackedMap.nodeBBox, in the order of r_bsp.c
+    private static final int BOX_TOP = PackedMap.BOX_TOP;
+    private static final int BOX_BOTTOM = PackedMap.BOX_BOTTOM;
+    private static final int BOX_LEFT = PackedMap.BOX_LEFT;
+    private static final int BOX_RIGHT = PackedMap.BOX_RIGHT;
+    // the two corners of a bounding box that bound it as seen from each of the 3x3 areas around and inside it
+    private static final int[][] CHECK_COORD = {
+            {BOX_RIGHT, BOX_TOP, BOX_LEFT, BOX_BOTTOM},
+            {BOX_RIGHT, BOX_TOP, BOX_LEFT, BOX_TOP},
+            {BOX_RIGHT, BOX_BOTTOM, BOX_LEFT, BOX_TOP},
+            {},
+            {BOX_LEFT, BOX_TOP, BOX_LEFT, BOX_BOTTOM},
+            {},
+            {BOX_RIGHT, BOX_BOTTOM, BOX_RIGHT, BOX_TOP},
+            {},
+            {BOX_LEFT, BOX_TOP, BOX_RIGHT, BOX_BOTTOM},
+            {BOX_LEFT, BOX_BOTTOM, BOX_RIGHT, BOX_BOTTOM},
+            {BOX_LEFT, BOX_BOTTOM, BOX_RIGHT, BOX_TOP},
+    };
+
+    private final PackedMap map;
+    private final int screenWidth;
+    private final int screenHeight;
+    private final int centerX;
+    private final int centerY;
+    // distance from the eye to the projection plane in pixels
+    private final int projection;
+    // wall textures used by the map and the texture numbers of each sidedef, NO_TEXTURE if there is none
+    private final WallTexture[] textures;
+    private final int[] upperTextures;
+    private final int[] lowerTextures;
+    private final int[] middleTextures;
+    // 64x64 flats used by the map, row by row, and the flat numbers of each sector
+    private final byte[][] flats;
+    private final int[] floorFlats;
+    private final int[] ceilingFlats;
+    // things that can be seen in each sector
+    private final MapSprite[][] sectorSprites;
 
     private int cameraX;
     private int cameraY;
@@ -38,424 +138,1522 @@ public class GameRenderer {
      * 180° (½ of full circle) → West (-X direction)
      * 270° (¾ of full circle) → South (-Y direction)
      */
-    private float cameraAngle;
-
-    private final int[] xy = new int[2];
-
-    private final List<VisPlane> visPlanes = new ArrayList<>(128);
-    private final int[] floorClip = new int[SCREEN_WIDTH];
-    private final int[] ceilingClip = new int[SCREEN_WIDTH];
+    private int viewAngle;
+    // view transform, updated in setCamera
+    private int viewCos;
+    private int viewSin;
+
+    // all colormaps one after another, a colormap is addressed by the offset of its first entry
+    private final byte[] colorMaps;
+    // ARGB colors of the palette indexes
+    private final int[] palette = new int[COLORMAP_SIZE];
+    // colormap offsets of walls by light level and scale, see R_InitLightTables
+    private final int[][] scaleLight = new int[LIGHTLEVELS][MAXLIGHTSCALE];
+    // colormap offsets of planes by light level and distance
+    private final int[][] zLight = new int[LIGHTLEVELS][MAXLIGHTZ];
+
+    // screen column of a fine angle relative to the view, shifted by 90°, see R_InitTextureMapping
+    private final int[] viewAngleToX = new int[FINEANGLES / 2];
+    // angle relative to the view of the left edge of a screen column
+    private final int[] xToViewAngle;
+    // angle between the view direction and the left edge of the screen
+    private final int clipAngle;
+    private final SolidSegs solidSegs;
+    // columns covered by the angles passed to toColumns, the end is exclusive
+    private int columnX1;
+    private int columnX2;
+
+    // when disabled walls don't hide anything behind them, which shows how much drawing the occlusion saves
+    boolean occlusion = true;
+    private final RenderStats stats = new RenderStats();
+
+    // the seg being drawn
+    private int curSeg;
+    private int curLine;
+    private int curSide;
+    private int frontSector;
+    // NO_SECTOR for a one sided line
+    private int backSector;
+    // angle from the camera to the start of the seg
+    private int rwAngle1;
+    private final SolidSegs.Visitor storeWallRange = this::storeWallRange;
+    // colormap offsets of the current seg by scale
+    private int[] wallLights;
+
+    private final VisPlanes visPlanes;
+    // the first row in each column that is already covered from below
+    private final int[] floorClip;
+    // the last row in each column that is already covered from above
+    private final int[] ceilingClip;
+    // planes of the current subsector, null if they can't be seen from the camera
     private VisPlane floorPlane;
     private VisPlane ceilingPlane;
 
+    // plane distance for each screen row at a plane height of one, see R_InitPlanes
+    private final int[] ySlope;
+    // correction of the distance for the angle of each screen column
+    private final int[] distScale;
+    // flat step per screen column at a distance of one
+    private int baseXScale;
+    private int baseYScale;
+    // distances and steps of the last plane height drawn in each row, cleared every frame
+    private final int[] cachedHeight;
+    private final int[] cachedDistance;
+    private final int[] cachedXStep;
+    private final int[] cachedYStep;
+    // column where the span started in each row of the plane being drawn
+    private final int[] spanStart;
+    private int planeHeight;
+    private byte[] planeFlat;
+    // colormap offsets of the current plane by distance
+    private int[] planeLights;
+
     final BufferedImage image;
-    private final Graphics2D g;
+    // pixels of the image, row by row
+    private final int[] rgb;
+    // palette indexes of the frame, row by row, turned into colors of the image once the frame is done
+    private final byte[] screen;
+
+    private final DrawSegs drawSegs;
+    private final VisSprites visSprites = new VisSprites();
+    // number of the frame being drawn and the last frame the sprites of each sector were added in
+    private int frame;
+    private final int[] sectorFrames;
+    // rows the sprite columns are clipped to, filled per sprite
+    private final int[] spriteClipTop;
+    private final int[] spriteClipBottom;
+
+    // workers drawing the screen in vertical strips, null when the frame is drawn while the BSP is walked
+    private ForkJoinPool pool;
+    // a task per strip, reused every frame
+    private DrawStrip[] stripTasks;
+    // wall columns and spans found by the BSP walk, drawn afterwards by the workers
+    private int[] columnCommands = new int[COLUMN_FIELDS * 1024];
+    private WallTexture[] columnTextures = new WallTexture[1024];
+    private int columnCount;
+    private int[] spanCommands = new int[SPAN_FIELDS * 1024];
+    private byte[][] spanFlats = new byte[1024][];
+    private int spanCount;
+
+    public GameRenderer(WadFile wad, WadMap map) throws WadException {
+        this(wad, map, DEFAULT_WIDTH, DEFAULT_HEIGHT, DEFAULT_FOV);
+    }
+
+    /**
+     * @param width  width of the frame in pixels
+     * @param height height of the frame in pixels
+     * @param fov    horizontal field of view in degrees, up to {@link #MAX_FOV}
+     */
+    public GameRenderer(WadFile wad, WadMap map, int width, int height, float fov) throws WadException {
+        this(wad, map, new TextureManager(wad), width, height, fov);
+    }
+
+    /**
+     * Packs the map first, see {@link #GameRenderer(WadFile, PackedMap, TextureManager, int, int, float)}.
+     */
+    public GameRenderer(WadFile wad, WadMap map, TextureManager textures, int width, int height, float fov)
+            throws WadException {
+        this(wad, PackedMap.of(map), textures, width, height, fov);
+    }
 
-    public GameRenderer(WadMap map, Map<String, BufferedImage> graphics) {
+    /**
+     * @param map      the map with an array per field, e.g. from {@link MappedWadFile#getPackedMap}
+     * @param textures wall textures of the WAD, shared between maps so each load only composes
+     *                 the textures it doesn't find in the cache
+     * @param width    width of the frame in pixels
+     * @param height   height of the frame in pixels
+     * @param fov      horizontal field of view in degrees, up to {@link #MAX_FOV}
+     */
+    public GameRenderer(WadFile wad, PackedMap map, TextureManager textures, int width, int height, float fov)
+            throws WadException {
+        this(Assets.of(wad), map, textures, width, height, fov);
+    }
+
+    /**
+     * Reads the palette, the flats and the sprites from the stack, a PWAD replaces them like any other lump.
+     * See {@link #GameRenderer(WadFile, PackedMap, TextureManager, int, int, float)} for the other parameters.
+     */
+    public GameRenderer(ResourceStack resources, PackedMap map, TextureManager textures, int width, int height,
+                        float fov) throws WadException {
+        this(Assets.of(resources), map, textures, width, height, fov);
+    }
+
+    private GameRenderer(Assets assets, PackedMap map, TextureManager textures, int width, int height, float fov)
+            throws WadException {
+        if (width < 2 || height < 2) {
+            throw new IllegalArgumentException("Frame is too small: " + width + "x" + height);
+        }
+        if (!(fov > 0 && fov <= MAX_FOV)) {
+            throw new IllegalArgumentException("Field of view is out of range: " + fov);
+        }
         this.map = map;
-        this.graphics = graphics;
+        screenWidth = width;
+        screenHeight = height;
+        centerX = width / 2;
+        centerY = height / 2;
+        projection = (int) Math.round(width / (2 * Math.tan(Math.toRadians(fov) / 2)));
+
+        // tables and buffers with an entry per screen column or row
+        xToViewAngle = new int[width + 1];
+        solidSegs = new SolidSegs(width);
+        visPlanes = new VisPlanes(width);
+        floorClip = new int[width];
+        ceilingClip = new int[width];
+        distScale = new int[width];
+        ySlope = new int[height];
+        cachedHeight = new int[height];
+        cachedDistance = new int[height];
+        cachedXStep = new int[height];
+        cachedYStep = new int[height];
+        spanStart = new int[height];
+        screen = new byte[width * height];
+        drawSegs = new DrawSegs(width, height);
+        spriteClipTop = new int[width];
+        spriteClipBottom = new int[width];
+
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        rgb = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        Color[] colors = assets.colors();
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = colors[i].getRGB();
+        }
+        colorMaps = new byte[NUMCOLORMAPS * COLORMAP_SIZE];
+        for (int i = 0; i < NUMCOLORMAPS; i++) {
+            System.arraycopy(assets.colorMaps()[i], 0, colorMaps, i * COLORMAP_SIZE, COLORMAP_SIZE);
+        }
+
+        // resolve texture names once, so drawing deals with numbers only, and only textures of the map are composed
+        Map<String, Integer> textureNumbers = new HashMap<>();
+        List<WallTexture> mapTextures = new ArrayList<>();
+        int sideDefCount = map.sideSector.length;
+        upperTextures = new int[sideDefCount];
+        lowerTextures = new int[sideDefCount];
+        middleTextures = new int[sideDefCount];
+        for (int i = 0; i < sideDefCount; i++) {
+            upperTextures[i] = resolve(map.sideUpper[i], textures::get, textureNumbers, mapTextures, Function.identity());
+            lowerTextures[i] = resolve(map.sideLower[i], textures::get, textureNumbers, mapTextures, Function.identity());
+            middleTextures[i] = resolve(map.sideMiddle[i], textures::get, textureNumbers, mapTextures, Function.identity());
+        }
+        this.textures = mapTextures.toArray(new WallTexture[0]);
+
+        Map<String, Integer> flatNumbers = new HashMap<>();
+        List<byte[]> flats = new ArrayList<>();
+        int sectorCount = map.sectorFloor.length;
+        floorFlats = new int[sectorCount];
+        ceilingFlats = new int[sectorCount];
+        for (int i = 0; i < sectorCount; i++) {
+            floorFlats[i] = resolve(map.sectorFloorTexture[i], assets.flats(), flatNumbers, flats, GameRenderer::flatPixels);
+            ceilingFlats[i] = resolve(map.sectorCeilingTexture[i], assets.flats(), flatNumbers, flats, GameRenderer::flatPixels);
+        }
+        this.flats = flats.toArray(new byte[0][]);
+
+        sectorFrames = new int[sectorCount];
+        sectorSprites = findSprites(map, assets);
+
+        initViewAngles(fov);
+        clipAngle = xToViewAngle[0];
+        initPlanes();
+        initLightTables();
+    }
+
+    // things with their sprites grouped by the sector they are in, see P_SpawnMapThing and R_InitSprites
+    private static MapSprite[][] findSprites(PackedMap map, Assets assets) throws WadException {
+        Map<String, SpriteFrame> frames = new HashMap<>();
+        List<List<MapSprite>> sprites = new ArrayList<>();
+        for (int i = 0; i < map.sectorFloor.length; i++) {
+            sprites.add(new ArrayList<>());
+        }
+        for (Thing thing : map.things) {
+            ThingType type = thing.type();
+            if (type.sprite == null || (thing.flags() & MTF_NORMAL) == 0 || (thing.flags() & MTF_NOTSINGLE) != 0) {
+                continue;
+            }
+            if (!frames.containsKey(type.sprite)) {
+                frames.put(type.sprite, SpriteFrame.find(type.sprite, assets.spriteNames(), assets.sprites()));
+            }
+            SpriteFrame frame = frames.get(type.sprite);
+            if (frame == null) {
+                continue;
+            }
+            int sectorNum = map.sectorAt(thing.x(), thing.y());
+            // like P_SpawnMapThing, a hanging thing is placed by its height, the top offset of the sprite
+            // is added when it is drawn
+            int z = (type.flags & ThingType.HANGING) != 0
+                    ? map.sectorCeiling[sectorNum] - type.height
+                    : map.sectorFloor[sectorNum];
+            int angle = ANG45 * (thing.angle() / 45);
+            boolean bright = (type.flags & ThingType.BRIGHT) != 0;
+            sprites.get(sectorNum).add(new MapSprite(thing.x(), thing.y(), z, angle, frame, bright));
+        }
+        MapSprite[][] result = new MapSprite[sprites.size()][];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = sprites.get(i).toArray(new MapSprite[0]);
+        }
+        return result;
+    }
+
+    // patches and flats of the directory and all directories inside it, by upper case lump name
+    private static void collectLumps(WadDirectory dir, Map<String, Graphic> patches, Map<String, byte[][]> flats) {
+        dir.graphics.forEach((name, graphic) -> patches.put(name.toUpperCase(Locale.ROOT), graphic));
+        dir.flats.forEach((name, flat) -> flats.put(name.toUpperCase(Locale.ROOT), flat));
+        for (WadDirectory child : dir.directories) {
+            collectLumps(child, patches, flats);
+        }
+    }
+
+    // number of the named resource in the resolved list, NO_TEXTURE if it is missing or can't be converted
+    private static <S, T> int resolve(
+            String name,
+            Source<S> sources,
+            Map<String, Integer> numbers,
+            List<T> resolved,
+            Function<S, T> converter
+    ) throws WadException {
+        if (name.equals(Texture.NO_TEXTURE)) {
+            return NO_TEXTURE;
+        }
+        String key = name.toUpperCase(Locale.ROOT);
+        Integer number = numbers.get(key);
+        if (number == null) {
+            S source = sources.find(key);
+            T value = source != null ? converter.apply(source) : null;
+            if (value != null) {
+                number = resolved.size();
+                resolved.add(value);
+            } else {
+                number = NO_TEXTURE;
+            }
+            numbers.put(key, number);
+        }
+        return number;
+    }
 
-        image = new BufferedImage(SCREEN_WIDTH, SCREEN_HEIGHT, BufferedImage.TYPE_INT_ARGB);
-        g = image.createGraphics();
-        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+    private static byte[] flatPixels(byte[][] rows) {
+        if (rows.length != FLAT_SIZE || rows[0].length != FLAT_SIZE) {
+            return null;
+        }
+        byte[] pixels = new byte[FLAT_SIZE * FLAT_SIZE];
+        for (int y = 0; y < FLAT_SIZE; y++) {
+            System.arraycopy(rows[y], 0, pixels, y * FLAT_SIZE, FLAT_SIZE);
+        }
+        return pixels;
+    }
+
+    private void initViewAngles(float fov) {
+        int fieldOfView = Tables.toAngle(fov) >>> ANGLETOFINESHIFT;
+        int centerXFrac = centerX << FRACBITS;
+        int focalLength = FixedPoint.div(centerXFrac, Tables.fineTangent[FINEANGLES / 4 + fieldOfView / 2]);
+
+        for (int i = 0; i < FINEANGLES / 2; i++) {
+            int t;
+            if (Tables.fineTangent[i] > FRACUNIT * 2) {
+                t = -1;
+            } else if (Tables.fineTangent[i] < -FRACUNIT * 2) {
+                t = screenWidth + 1;
+            } else {
+                t = FixedPoint.mul(Tables.fineTangent[i], focalLength);
+                t = (centerXFrac - t + FRACUNIT - 1) >> FRACBITS;
+                t = Math.max(-1, Math.min(screenWidth + 1, t));
+            }
+            viewAngleToX[i] = t;
+        }
+
+        // the smallest angle that maps to each column
+        for (int x = 0; x <= screenWidth; x++) {
+            int i = 0;
+            while (viewAngleToX[i] > x) {
+                i++;
+            }
+            xToViewAngle[x] = (i << ANGLETOFINESHIFT) - ANG90;
+        }
+
+        // take out the fencepost cases
+        for (int i = 0; i < FINEANGLES / 2; i++) {
+            if (viewAngleToX[i] == -1) {
+                viewAngleToX[i] = 0;
+            } else if (viewAngleToX[i] == screenWidth + 1) {
+                viewAngleToX[i] = screenWidth;
+            }
+        }
+    }
+
+    private void initPlanes() {
+        for (int i = 0; i < screenHeight; i++) {
+            int dy = Math.abs(((i - screenHeight / 2) << FRACBITS) + FRACUNIT / 2);
+            ySlope[i] = FixedPoint.div(projection << FRACBITS, dy);
+        }
+        for (int i = 0; i < screenWidth; i++) {
+            int cosAdj = Math.abs(Tables.fineCosine(xToViewAngle[i]));
+            distScale[i] = FixedPoint.div(FRACUNIT, cosAdj);
+        }
+    }
+
+    // see R_InitLightTables
+    private void initLightTables() {
+        for (int i = 0; i < LIGHTLEVELS; i++) {
+            int startMap = ((LIGHTLEVELS - 1 - i) * 2) * NUMCOLORMAPS / LIGHTLEVELS;
+            // planes get darker with the distance
+            for (int j = 0; j < MAXLIGHTZ; j++) {
+                int scale = FixedPoint.div((BASE_WIDTH / 2) * FRACUNIT, (j + 1) << LIGHTZSHIFT) >> LIGHTSCALESHIFT;
+                int level = Math.max(0, Math.min(NUMCOLORMAPS - 1, startMap - scale / DISTMAP));
+                zLight[i][j] = level * COLORMAP_SIZE;
+            }
+            // walls get darker as they get smaller on the screen, wider screens make them larger, see R_ExecuteSetViewSize
+            for (int j = 0; j < MAXLIGHTSCALE; j++) {
+                int level = Math.max(0, Math.min(NUMCOLORMAPS - 1, startMap - j * BASE_WIDTH / screenWidth / DISTMAP));
+                scaleLight[i][j] = level * COLORMAP_SIZE;
+            }
+        }
+    }
+
+    // light level of a sector reduced to an index of the light tables, with the extra light of walls added
+    private static int lightIndex(int lightLevel, int extra) {
+        return Math.max(0, Math.min(LIGHTLEVELS - 1, (lightLevel >> LIGHTSEGSHIFT) + extra));
     }
 
     public void setCamera(int x, int y, float angle) {
         this.cameraX = x;
         this.cameraY = y;
         this.cameraZ = 56;
-        this.cameraAngle = angle;
+        this.viewAngle = Tables.toAngle(angle);
+        this.viewCos = Tables.fineCosine(viewAngle);
+        this.viewSin = Tables.fineSine(viewAngle);
+    }
+
+    /**
+     * Sets how many threads draw the frame.
+     * With more than one, the BSP walk only records the wall columns and floor and ceiling spans to draw,
+     * then the screen is split into vertical strips drawn on that many threads.
+     * A strip only writes its own columns, so the threads need no locking.
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threads);
+        }
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        if (threads > 1) {
+            pool = new ForkJoinPool(threads);
+            startWorkers(pool, threads);
+            // a few strips per thread even out strips that have more to draw
+            int stripCount = Math.min(screenWidth, threads * 4);
+            stripTasks = new DrawStrip[stripCount];
+            for (int i = 0; i < stripCount; i++) {
+                stripTasks[i] = new DrawStrip(i * screenWidth / stripCount, (i + 1) * screenWidth / stripCount);
+            }
+        }
+    }
+
+    // the pool adds its threads as tasks come in, all of them are started now so no thread is created during a frame
+    private static void startWorkers(ForkJoinPool pool, int threads) {
+        CountDownLatch started = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            // each task holds its thread until all have started, so every task gets its own thread
+            pool.execute(() -> {
+                started.countDown();
+                awaitUninterruptibly(started);
+            });
+        }
+        awaitUninterruptibly(started);
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Counters of the last rendered frame.
+     */
+    public RenderStats getStats() {
+        return stats;
     }
 
     public void render() {
-        long start = System.currentTimeMillis();
-        g.setColor(Color.WHITE);
-        g.fillRect(0, 0, SCREEN_WIDTH, SCREEN_HEIGHT);
+        long frameStart = System.nanoTime();
+        Arrays.fill(screen, BACKGROUND_COLOR);
 
-        for (int i = 0; i < SCREEN_WIDTH; i++) {
-            floorClip[i] = SCREEN_HEIGHT;
+        for (int i = 0; i < screenWidth; i++) {
+            floorClip[i] = screenHeight;
             ceilingClip[i] = -1;
         }
-
-        Node root = map.nodes[map.nodes.length - 1];
-        walk(root);
-        drawVisPlanes();
-        long elapsed = System.currentTimeMillis() - start;
-        System.out.format("Frame rendering took %d ms", elapsed);
+        solidSegs.clear();
+        clearPlanes();
+        drawSegs.clear();
+        visSprites.clear();
+        frame++;
+        stats.reset();
+        columnCount = 0;
+        spanCount = 0;
+
+        long time = System.nanoTime();
+        walk(map.nodeX.length - 1);
+        stats.bspNanos = System.nanoTime() - time;
+
+        time = System.nanoTime();
+        drawPlanes();
+        stats.planeNanos = System.nanoTime() - time;
+
+        time = System.nanoTime();
+        visSprites.sort();
+        if (pool != null) {
+            stats.spriteNanos = System.nanoTime() - time;
+            time = System.nanoTime();
+            drawStrips();
+        } else {
+            drawSprites(0, screenWidth - 1);
+            stats.spriteNanos = System.nanoTime() - time;
+            time = System.nanoTime();
+            // palette indexes become colors once for the whole frame
+            for (int i = 0; i < screen.length; i++) {
+                rgb[i] = palette[screen[i] & 0xFF];
+            }
+        }
+        stats.presentNanos = System.nanoTime() - time;
+        stats.frameNanos = System.nanoTime() - frameStart;
     }
 
-    private void walk(Node node) {
-        int side = (cameraX - node.partitionLineX()) * node.partitionLineDY()
-                - (cameraY - node.partitionLineY()) * node.partitionLineDX();
+    private void walk(int node) {
+        stats.nodes++;
+        long side = (long) (cameraX - map.nodeX[node]) * map.nodeDY[node]
+                - (long) (cameraY - map.nodeY[node]) * map.nodeDX[node];
+        int box = node * PackedMap.BBOX_FIELDS;
         // To determine which side is front and which is back, DOOM uses the partition line as a reference:
         // - The front side consists of all map points to the "right" of the partition line.
         // - The back side consists of all map points to the "left" of the partition line.
+        // A camera right on the line counts as being on the back side, like R_PointOnSide does.
+        // The side with the camera is visited first, so nearer walls hide farther ones.
         if (side > 0) { // the camera is on the front side
-            if (isBoundingBoxInFrustum(node.leftBBox())) {
-                if (isLeaf(node.leftChild())) {
-                    drawSubSector(node.leftChild() & SSECTOR_MASK);
-                } else {
-                    walk(map.nodes[node.leftChild()]);
-                }
-            }
-            if (isBoundingBoxInFrustum(node.rightBBox())) {
-                if (isLeaf(node.rightChild())) {
-                    drawSubSector(node.rightChild() & SSECTOR_MASK);
-                } else {
-                    walk(map.nodes[node.rightChild()]);
-                }
-            }
-        } else if (side < 0) { // the camera is on the back side
-            if (isBoundingBoxInFrustum(node.rightBBox())) {
-                if (isLeaf(node.rightChild())) {
-                    drawSubSector(node.rightChild() & SSECTOR_MASK);
-                } else {
-                    walk(map.nodes[node.rightChild()]);
-                }
-            }
-            if (isBoundingBoxInFrustum(node.leftBBox())) {
-                if (isLeaf(node.leftChild())) {
-                    drawSubSector(node.leftChild() & SSECTOR_MASK);
-                } else {
-                    walk(map.nodes[node.leftChild()]);
-                }
-            }
+            walkChild(map.nodeRightChild[node], box);
+            walkChild(map.nodeLeftChild[node], box + PackedMap.LEFT_BBOX);
+        } else { // the camera is on the back side
+            walkChild(map.nodeLeftChild[node], box + PackedMap.LEFT_BBOX);
+            walkChild(map.nodeRightChild[node], box);
+        }
+    }
+
+    private void walkChild(int child, int box) {
+        // nothing else can be seen once solid walls cover the whole screen
+        if (solidSegs.isFull() || !checkBBox(map.nodeBBox, box)) {
+            return;
+        }
+        if (isLeaf(child)) {
+            drawSubSector(child & ~PackedMap.NF_SUBSECTOR);
         } else {
-            throw new UnsupportedOperationException();
+            walk(child);
         }
     }
 
     private void drawSubSector(int ssectorNumber) {
-        SSector ssector = map.ssectors[ssectorNumber];
-        for (int segNum = ssector.firstSeg(); segNum < ssector.firstSeg() + ssector.segCount(); segNum++) {
-            Seg seg = map.segs[segNum];
-            LineDef line = map.lineDefs[seg.lineDef()];
-
-            Vertex start = map.vertexes[line.startVertex()];
-            Vertex end = map.vertexes[line.endVertex()];
-            // SUGGESTION: probably the texture should be mirrored. But maybe the order of vertexes is enough.
-            boolean isFrontSide = seg.direction() == Seg.Direction.SAME;
-            int sideDefNum = isFrontSide ? line.rightSideDef() : line.leftSideDef();
-            if (sideDefNum == SideDef.NO_SIDE_DEF) {
-                continue;
-            }
-            int backSideDefNum = !isFrontSide ? line.rightSideDef() : line.leftSideDef();
-            SideDef backSide = backSideDefNum == SideDef.NO_SIDE_DEF ? null : map.sideDefs[backSideDefNum];
-            SideDef side = map.sideDefs[sideDefNum];
-            drawSide(side, start, end, backSide, seg.offset());
+        stats.subSectors++;
+        int sectorNum = map.ssectorSector[ssectorNumber];
+        int floorHeight = map.sectorFloor[sectorNum];
+        int ceilingHeight = map.sectorCeiling[sectorNum];
+        int lightLevel = map.sectorLight[sectorNum];
+        int viewZ = cameraZ + PLAYER_HEIGHT;
+        floorPlane = floorHeight < viewZ
+                ? visPlanes.find(floorFlats[sectorNum], floorHeight, lightLevel)
+                : null;
+        ceilingPlane = ceilingHeight > viewZ
+                ? visPlanes.find(ceilingFlats[sectorNum], ceilingHeight, lightLevel)
+                : null;
+
+        // a sector can be split into many subsectors, its things are added once
+        if (sectorFrames[sectorNum] != frame) {
+            sectorFrames[sectorNum] = frame;
+            addSprites(lightLevel, sectorSprites[sectorNum]);
+        }
+
+        int firstSeg = map.ssectorFirstSeg[ssectorNumber];
+        for (int segNum = firstSeg; segNum < firstSeg + map.ssectorSegCount[ssectorNumber]; segNum++) {
+            addLine(segNum);
         }
     }
 
-    private void drawSide(SideDef side, Vertex v1, Vertex v2, SideDef backSide, int offset) {
-        Sector sector = map.sectors[side.facingSectorNumber()];
-        Sector backSector = backSide != null ? map.sectors[backSide.facingSectorNumber()] : null;
+    // see R_AddSprites
+    private void addSprites(int lightLevel, MapSprite[] sprites) {
+        int[] spriteLights = scaleLight[lightIndex(lightLevel, 0)];
+        for (MapSprite sprite : sprites) {
+            projectSprite(sprite, spriteLights);
+        }
+    }
 
-        int width = Math.round(lineLength(v1.x(), v1.y(), v2.x(), v2.y()));
+    /**
+     * Finds the columns and the scale of a thing on the screen and keeps it for drawing after the walls and planes,
+     * see R_ProjectSprite.
+     */
+    private void projectSprite(MapSprite sprite, int[] spriteLights) {
+        // position relative to the camera, 16.16 fixed point
+        long trX = sprite.x - cameraX;
+        long trY = sprite.y - cameraY;
+        long tz = trX * viewCos + trY * viewSin;
+        // too close or behind the camera
+        if (tz < MINZ) {
+            return;
+        }
+        // positive to the right of the view direction
+        long tx = trX * viewSin - trY * viewCos;
+        // too far off the side
+        if (Math.abs(tx) > tz << 2) {
+            return;
+        }
+        int xScale = (int) (((long) projection << (2 * FRACBITS)) / tz);
+
+        SpriteFrame frame = sprite.frame;
+        int rotation = 0;
+        if (frame.rotates) {
+            // which side of the thing the camera sees
+            int angle = pointToAngle(sprite.x, sprite.y);
+            rotation = (angle - sprite.angle + (ANG45 / 2) * 9) >>> 29;
+        }
+        Graphic patch = frame.patches[rotation];
+        boolean flip = frame.flipped[rotation];
+
+        long centerXFrac = (long) centerX << FRACBITS;
+        tx -= (long) patch.xOffset() << FRACBITS;
+        int x1 = (int) ((centerXFrac + ((tx * xScale) >> FRACBITS)) >> FRACBITS);
+        // off the right side
+        if (x1 > screenWidth) {
+            return;
+        }
+        tx += (long) patch.width() << FRACBITS;
+        int x2 = (int) ((centerXFrac + ((tx * xScale) >> FRACBITS)) >> FRACBITS) - 1;
+        // off the left side
+        if (x2 < 0) {
+            return;
+        }
 
-        floorPlane = getVisPlane(sector.floorTexture(), sector.floorHeight());
-        ceilingPlane = getVisPlane(sector.ceilingTexture(), sector.ceilingHeight());
+        stats.sprites++;
+        VisSprite vis = visSprites.add();
+        vis.gx = sprite.x;
+        vis.gy = sprite.y;
+        vis.gz = sprite.z;
+        vis.gzt = sprite.z + patch.yOffset();
+        vis.scale = xScale;
+        vis.textureMid = (vis.gzt - (cameraZ + PLAYER_HEIGHT)) << FRACBITS;
+        vis.x1 = Math.max(x1, 0);
+        vis.x2 = Math.min(x2, screenWidth - 1);
+        int iScale = (int) ((1L << (2 * FRACBITS)) / xScale);
+        if (flip) {
+            vis.startFrac = (patch.width() << FRACBITS) - 1;
+            vis.xiScale = -iScale;
+        } else {
+            vis.startFrac = 0;
+            vis.xiScale = iScale;
+        }
+        vis.startFrac += vis.xiScale * (vis.x1 - x1);
+        vis.patch = patch;
+        vis.colorMap = sprite.bright ? 0 : spriteLights[Math.min(xScale >> LIGHTSCALESHIFT, MAXLIGHTSCALE - 1)];
+    }
 
-        if (!side.lowerTexture().equals(Texture.NO_TEXTURE) && backSector != null) {
-            boolean p1 = projectPoint(v1.x(), v1.y(), sector.floorHeight(), xy);
-            int fx1 = xy[0], fy1 = xy[1];
-            boolean p2 = projectPoint(v2.x(), v2.y(), sector.floorHeight(), xy);
-            int fx2 = xy[0], fy2 = xy[1];
+    /**
+     * Clips the seg to the view and to the walls drawn so far and draws what is left, see R_AddLine.
+     */
+    private void addLine(int seg) {
+        int v1 = map.segStart[seg];
+        int v2 = map.segEnd[seg];
+
+        int angle1 = pointToAngle(map.vertexX[v1], map.vertexY[v1]);
+        int angle2 = pointToAngle(map.vertexX[v2], map.vertexY[v2]);
+        int span = angle1 - angle2;
+        // the camera sees the back of the seg
+        if (Integer.compareUnsigned(span, ANG180) >= 0) {
+            return;
+        }
 
-            boolean p3 = projectPoint(v1.x(), v1.y(), backSector.floorHeight(), xy);
-            int cy1 = xy[1];
-            boolean p4 = projectPoint(v2.x(), v2.y(), backSector.floorHeight(), xy);
-            int cy2 = xy[1];
+        rwAngle1 = angle1;
+        if (!toColumns(angle1 - viewAngle, angle2 - viewAngle, span)) {
+            return;
+        }
 
-            if (p1 && p2 && p3 && p4) {
-                int height = Math.abs(backSector.floorHeight() - sector.floorHeight());
-                drawTexture(fx1, fy1, cy1, fx2, fy2, cy2, side.lowerTexture(), width, height, side.xOffset() + offset, side.yOffset());
+        int line = map.segLine[seg];
+        boolean isFrontSide = map.segDirection[seg] == Seg.Direction.SAME.ordinal();
+        int sideDefNum = isFrontSide ? map.lineRightSide[line] : map.lineLeftSide[line];
+        if (sideDefNum == SideDef.NO_SIDE_DEF) {
+            return;
+        }
+        int backSideDefNum = !isFrontSide ? map.lineRightSide[line] : map.lineLeftSide[line];
+        curSeg = seg;
+        curLine = line;
+        curSide = sideDefNum;
+        frontSector = map.sideSector[sideDefNum];
+        backSector = backSideDefNum == SideDef.NO_SIDE_DEF ? NO_SECTOR : map.sideSector[backSideDefNum];
+
+        // single sided line or closed door
+        if (backSector == NO_SECTOR
+                || map.sectorCeiling[backSector] <= map.sectorFloor[frontSector]
+                || map.sectorFloor[backSector] >= map.sectorCeiling[frontSector]) {
+            if (occlusion) {
+                solidSegs.clipSolid(columnX1, columnX2 - 1, storeWallRange);
+            } else {
+                solidSegs.clipPass(columnX1, columnX2 - 1, storeWallRange);
             }
+            return;
         }
 
-        if (!side.middleTexture().equals(Texture.NO_TEXTURE)) {
-            boolean p1 = projectPoint(v1.x(), v1.y(), sector.floorHeight(), xy);
-            int fx1 = xy[0], fy1 = xy[1];
-            boolean p2 = projectPoint(v2.x(), v2.y(), sector.floorHeight(), xy);
-            int fx2 = xy[0], fy2 = xy[1];
+        // lines with the same floor and ceiling on both sides only trigger specials, there is nothing to draw
+        if (map.sectorCeiling[backSector] == map.sectorCeiling[frontSector]
+                && map.sectorFloor[backSector] == map.sectorFloor[frontSector]
+                && map.sectorCeilingTexture[backSector].equals(map.sectorCeilingTexture[frontSector])
+                && map.sectorFloorTexture[backSector].equals(map.sectorFloorTexture[frontSector])
+                && map.sectorLight[backSector] == map.sectorLight[frontSector]
+                && map.sideMiddle[curSide].equals(Texture.NO_TEXTURE)) {
+            return;
+        }
 
-            boolean p3 = projectPoint(v1.x(), v1.y(), sector.ceilingHeight(), xy);
-            int cy1 = xy[1];
-            boolean p4 = projectPoint(v2.x(), v2.y(), sector.ceilingHeight(), xy);
-            int cy2 = xy[1];
+        solidSegs.clipPass(columnX1, columnX2 - 1, storeWallRange);
+    }
 
-            if (p1 && p2 && p3 && p4) {
-                int height = Math.abs(sector.ceilingHeight() - sector.floorHeight());
-                drawTexture(fx1, fy1, cy1, fx2, fy2, cy2, side.middleTexture(), width, height, side.xOffset() + offset, side.yOffset());
+    /**
+     * Draws columns {@code start} to {@code stop} of the current seg and marks the floor and ceiling next to it,
+     * see R_StoreWallRange and R_RenderSegLoop.
+     */
+    private void storeWallRange(int start, int stop) {
+        long wallStart = System.nanoTime();
+        stats.segs++;
+        int v1 = map.segStart[curSeg];
+        int v2 = map.segEnd[curSeg];
+
+        // fake contrast, walls along the x axis are a bit darker and walls along the y axis a bit brighter
+        int extraLight = map.vertexY[v1] == map.vertexY[v2] ? -1 : map.vertexX[v1] == map.vertexX[v2] ? 1 : 0;
+        wallLights = scaleLight[lightIndex(map.sectorLight[frontSector], extraLight)];
+
+        // distance from the camera to the line the seg lies on, needed for the scale
+        int normalAngle = (map.segAngle[curSeg] << 16) + ANG90;
+        int offsetAngle = Math.abs(normalAngle - rwAngle1);
+        if (Integer.compareUnsigned(offsetAngle, ANG90) > 0) {
+            offsetAngle = ANG90;
+        }
+        int hyp = pointToDist(map.vertexX[v1], map.vertexY[v1]);
+        int distance = FixedPoint.mul(hyp, Tables.fineSine(ANG90 - offsetAngle));
+
+        int scale = scaleFromGlobalAngle(viewAngle + xToViewAngle[start], normalAngle, distance);
+        int scale2 = scale;
+        int scaleStep = 0;
+        if (stop > start) {
+            scale2 = scaleFromGlobalAngle(viewAngle + xToViewAngle[stop], normalAngle, distance);
+            scaleStep = (scale2 - scale) / (stop - start);
+        }
+
+        // heights relative to the eye
+        int viewZ = cameraZ + PLAYER_HEIGHT;
+
+        // the wall is kept to clip the sprites behind it
+        DrawSeg drawSeg = drawSegs.add();
+        drawSeg.seg = curSeg;
+        drawSeg.x1 = start;
+        drawSeg.x2 = stop;
+        drawSeg.scale1 = scale;
+        drawSeg.scale2 = scale2;
+        drawSeg.topClip = NO_CLIP;
+        drawSeg.bottomClip = NO_CLIP;
+        if (backSector == NO_SECTOR) {
+            drawSeg.silhouette = SIL_BOTH;
+            drawSeg.topClip = drawSegs.screenHeightClip;
+            drawSeg.bottomClip = drawSegs.negativeOneClip;
+            drawSeg.bottomSilHeight = Integer.MAX_VALUE;
+            drawSeg.topSilHeight = Integer.MIN_VALUE;
+        } else {
+            drawSeg.silhouette = SIL_NONE;
+            if (map.sectorFloor[frontSector] > map.sectorFloor[backSector]) {
+                drawSeg.silhouette = SIL_BOTTOM;
+                drawSeg.bottomSilHeight = map.sectorFloor[frontSector];
+            } else if (map.sectorFloor[backSector] > viewZ) {
+                drawSeg.silhouette = SIL_BOTTOM;
+                drawSeg.bottomSilHeight = Integer.MAX_VALUE;
+            }
+            if (map.sectorCeiling[frontSector] < map.sectorCeiling[backSector]) {
+                drawSeg.silhouette |= SIL_TOP;
+                drawSeg.topSilHeight = map.sectorCeiling[frontSector];
+            } else if (map.sectorCeiling[backSector] < viewZ) {
+                drawSeg.silhouette |= SIL_TOP;
+                drawSeg.topSilHeight = Integer.MIN_VALUE;
+            }
+            // closed door
+            if (map.sectorCeiling[backSector] <= map.sectorFloor[frontSector]) {
+                drawSeg.bottomClip = drawSegs.negativeOneClip;
+                drawSeg.bottomSilHeight = Integer.MAX_VALUE;
+                drawSeg.silhouette |= SIL_BOTTOM;
+            }
+            if (map.sectorFloor[backSector] >= map.sectorCeiling[frontSector]) {
+                drawSeg.topClip = drawSegs.screenHeightClip;
+                drawSeg.topSilHeight = Integer.MIN_VALUE;
+                drawSeg.silhouette |= SIL_TOP;
             }
         }
 
-        if (!side.upperTexture().equals(Texture.NO_TEXTURE) & backSector != null) {
-            boolean p1 = projectPoint(v1.x(), v1.y(), backSector.ceilingHeight(), xy);
-            int fx1 = xy[0], fy1 = xy[1];
-            boolean p2 = projectPoint(v2.x(), v2.y(), backSector.ceilingHeight(), xy);
-            int fx2 = xy[0], fy2 = xy[1];
+        int worldTop = (map.sectorCeiling[frontSector] - viewZ) << HEIGHTBITS;
+        int worldBottom = (map.sectorFloor[frontSector] - viewZ) << HEIGHTBITS;
+        int worldHigh = 0;
+        int worldLow = 0;
+
+        WallTexture midTexture = null;
+        WallTexture topTexture = null;
+        WallTexture bottomTexture = null;
+        // heights of the top edges of the textures relative to the eye, 16.16 fixed point
+        int midTextureMid = 0;
+        int topTextureMid = 0;
+        int bottomTextureMid = 0;
+        boolean markFloor;
+        boolean markCeiling;
+
+        if (backSector == NO_SECTOR) {
+            midTexture = findTexture(middleTextures[curSide]);
+            markFloor = true;
+            markCeiling = true;
+            if ((map.lineFlags[curLine] & ML_DONTPEGBOTTOM) != 0 && midTexture != null) {
+                // bottom of the texture at the floor
+                midTextureMid = (map.sectorFloor[frontSector] + midTexture.height() - viewZ) << FRACBITS;
+            } else {
+                // top of the texture at the ceiling
+                midTextureMid = (map.sectorCeiling[frontSector] - viewZ) << FRACBITS;
+            }
+            midTextureMid += map.sideYOffset[curSide] << FRACBITS;
+        } else {
+            worldHigh = (map.sectorCeiling[backSector] - viewZ) << HEIGHTBITS;
+            worldLow = (map.sectorFloor[backSector] - viewZ) << HEIGHTBITS;
+
+            markFloor = worldLow != worldBottom
+                    || !map.sectorFloorTexture[backSector].equals(map.sectorFloorTexture[frontSector])
+                    || map.sectorLight[backSector] != map.sectorLight[frontSector];
+            markCeiling = worldHigh != worldTop
+                    || !map.sectorCeilingTexture[backSector].equals(map.sectorCeilingTexture[frontSector])
+                    || map.sectorLight[backSector] != map.sectorLight[frontSector];
+            // closed door
+            if (map.sectorCeiling[backSector] <= map.sectorFloor[frontSector]
+                    || map.sectorFloor[backSector] >= map.sectorCeiling[frontSector]) {
+                markFloor = true;
+                markCeiling = true;
+            }
 
-            boolean p3 = projectPoint(v1.x(), v1.y(), sector.ceilingHeight(), xy);
-            int cy1 = xy[1];
-            boolean p4 = projectPoint(v2.x(), v2.y(), sector.ceilingHeight(), xy);
-            int cy2 = xy[1];
+            if (worldHigh < worldTop) {
+                topTexture = findTexture(upperTextures[curSide]);
+                if ((map.lineFlags[curLine] & ML_DONTPEGTOP) != 0 || topTexture == null) {
+                    // top of the texture at the ceiling
+                    topTextureMid = (map.sectorCeiling[frontSector] - viewZ) << FRACBITS;
+                } else {
+                    // bottom of the texture at the lower ceiling
+                    topTextureMid = (map.sectorCeiling[backSector] + topTexture.height() - viewZ) << FRACBITS;
+                }
+                topTextureMid += map.sideYOffset[curSide] << FRACBITS;
+            }
+            if (worldLow > worldBottom) {
+                bottomTexture = findTexture(lowerTextures[curSide]);
+                if ((map.lineFlags[curLine] & ML_DONTPEGBOTTOM) != 0) {
+                    // aligned as if the wall went all the way up to the ceiling
+                    bottomTextureMid = (map.sectorCeiling[frontSector] - viewZ) << FRACBITS;
+                } else {
+                    // top of the texture at the higher floor
+                    bottomTextureMid = (map.sectorFloor[backSector] - viewZ) << FRACBITS;
+                }
+                bottomTextureMid += map.sideYOffset[curSide] << FRACBITS;
+            }
+        }
 
-            if (p1 && p2 && p3 && p4) {
-                int height = Math.abs(sector.ceilingHeight() - backSector.ceilingHeight());
-                drawTexture(fx1, fy1, cy1, fx2, fy2, cy2, side.upperTexture(), width, height, side.xOffset() + offset, side.yOffset());
+        // horizontal texture offset and the angle of the seg normal relative to the view
+        int rwOffset = 0;
+        int centerAngle = 0;
+        if (midTexture != null || topTexture != null || bottomTexture != null) {
+            offsetAngle = normalAngle - rwAngle1;
+            if (Integer.compareUnsigned(offsetAngle, ANG180) > 0) {
+                offsetAngle = -offsetAngle;
+            }
+            if (Integer.compareUnsigned(offsetAngle, ANG90) > 0) {
+                offsetAngle = ANG90;
+            }
+            rwOffset = FixedPoint.mul(hyp, Tables.fineSine(offsetAngle));
+            if (Integer.compareUnsigned(normalAngle - rwAngle1, ANG180) < 0) {
+                rwOffset = -rwOffset;
             }
+            rwOffset += (map.sideXOffset[curSide] + map.segOffset[curSeg]) << FRACBITS;
+            centerAngle = ANG90 + viewAngle - normalAngle;
         }
-    }
 
-    private void drawTexture(
-            int x1, int fy1, int cy1,
-            int x2, int fy2, int cy2,
-            String name,
-            int width,
-            int height,
-            int tOffsetX,
-            int tOffsetY
-    ) {
-        if (x1 == x2 || fy1 >= cy1 || fy2 >= cy2) {
-            return;
+        // the floor can't be seen from below and the ceiling from above
+        if (map.sectorFloor[frontSector] >= viewZ) {
+            markFloor = false;
+        }
+        if (map.sectorCeiling[frontSector] <= viewZ) {
+            markCeiling = false;
         }
 
-        if (NO_TEXTURING) {
-            polygon.reset();
-            polygon.moveTo(x1, fy1);
-            polygon.lineTo(x2, fy2);
-            polygon.lineTo(x2, cy2);
-            polygon.lineTo(x1, cy1);
-            polygon.closePath();
-            g.setColor(Color.LIGHT_GRAY);
-            g.fill(polygon);
-            g.setColor(Color.BLACK);
-            g.draw(polygon);
-            return;
+        // screen rows of the wall edges, stepped across the columns
+        int centerYFrac = centerY << HEIGHTBITS;
+        int topStep = -FixedPoint.mul(scaleStep, worldTop);
+        int topFrac = centerYFrac - FixedPoint.mul(worldTop, scale);
+        int bottomStep = -FixedPoint.mul(scaleStep, worldBottom);
+        int bottomFrac = centerYFrac - FixedPoint.mul(worldBottom, scale);
+        int pixHigh = 0;
+        int pixHighStep = 0;
+        int pixLow = 0;
+        int pixLowStep = 0;
+        if (backSector != NO_SECTOR) {
+            if (worldHigh < worldTop) {
+                pixHigh = centerYFrac - FixedPoint.mul(worldHigh, scale);
+                pixHighStep = -FixedPoint.mul(scaleStep, worldHigh);
+            }
+            if (worldLow > worldBottom) {
+                pixLow = centerYFrac - FixedPoint.mul(worldLow, scale);
+                pixLowStep = -FixedPoint.mul(scaleStep, worldLow);
+            }
         }
 
-        BufferedImage texture = graphics.get(name.toUpperCase());
+        if (markCeiling) {
+            ceilingPlane = visPlanes.check(ceilingPlane, start, stop);
+        }
+        if (markFloor) {
+            floorPlane = visPlanes.check(floorPlane, start, stop);
+        }
 
-        float length = lineLength(x1, cy1, x2, cy2);
-        float dcy = 1f * (cy2 - cy1) / Math.abs(x2 - x1);
-        float dfy = 1f * (fy2 - fy1) / Math.abs(x2 - x1);
+        for (int x = start; x <= stop; x++) {
+            int yl = Math.max((topFrac + HEIGHTUNIT - 1) >> HEIGHTBITS, ceilingClip[x] + 1);
+            if (markCeiling) {
+                int top = ceilingClip[x] + 1;
+                int bottom = Math.min(yl - 1, floorClip[x] - 1);
+                if (top <= bottom) {
+                    ceilingPlane.top[x + 1] = top;
+                    ceilingPlane.bottom[x + 1] = bottom;
+                }
+            }
 
-        float cy = cy1;
-        float fy = fy1;
+            int yh = Math.min(bottomFrac >> HEIGHTBITS, floorClip[x] - 1);
+            if (markFloor) {
+                int top = Math.max(yh + 1, ceilingClip[x] + 1);
+                int bottom = floorClip[x] - 1;
+                if (top <= bottom) {
+                    floorPlane.top[x + 1] = top;
+                    floorPlane.bottom[x + 1] = bottom;
+                }
+            }
 
-        float widthScale = 1f * width / length;
-        float tx = tOffsetX;
+            // texture column and the step through the texture per screen row
+            int angle = ((centerAngle + xToViewAngle[x]) >>> ANGLETOFINESHIFT) & (FINEANGLES / 2 - 1);
+            int textureColumn = (rwOffset - FixedPoint.mul(Tables.fineTangent[angle], distance)) >> FRACBITS;
+            int textureStep = (int) (0xFFFFFFFFL / scale);
+            int colorMap = wallLights[Math.min(scale >> LIGHTSCALESHIFT, MAXLIGHTSCALE - 1)];
+
+            if (backSector == NO_SECTOR) {
+                drawColumn(midTexture, x, yl, yh, midTextureMid, textureColumn, textureStep, colorMap);
+                ceilingClip[x] = screenHeight;
+                floorClip[x] = -1;
+            } else {
+                if (topTexture != null) {
+                    int mid = Math.min(pixHigh >> HEIGHTBITS, floorClip[x] - 1);
+                    pixHigh += pixHighStep;
+                    if (mid >= yl) {
+                        drawColumn(topTexture, x, yl, mid, topTextureMid, textureColumn, textureStep, colorMap);
+                        ceilingClip[x] = mid;
+                    } else {
+                        ceilingClip[x] = yl - 1;
+                    }
+                } else if (markCeiling) {
+                    ceilingClip[x] = yl - 1;
+                }
 
-        int startX = Math.min(x2, x1);
-        int endX = Math.max(x2, x1);
+                if (bottomTexture != null) {
+                    int mid = Math.max((pixLow + HEIGHTUNIT - 1) >> HEIGHTBITS, ceilingClip[x] + 1);
+                    pixLow += pixLowStep;
+                    if (mid <= yh) {
+                        drawColumn(bottomTexture, x, mid, yh, bottomTextureMid, textureColumn, textureStep, colorMap);
+                        floorClip[x] = mid;
+                    } else {
+                        floorClip[x] = yh + 1;
+                    }
+                } else if (markFloor) {
+                    floorClip[x] = yh + 1;
+                }
+            }
 
-        for (int x = startX; x <= endX; x++) {
-            drawTextureColumn(texture, height, Math.round(tx), tOffsetY, x, Math.round(fy), Math.round(cy));
-            cy += dcy;
-            fy += dfy;
-            tx += widthScale;
+            scale += scaleStep;
+            topFrac += topStep;
+            bottomFrac += bottomStep;
         }
-    }
 
-    private void drawTextureColumn(BufferedImage texture, int height, int tx, int tyOffset, int x, int y1, int y2) {
-        if (tx < 0 || x < 0 || x >= image.getWidth()) return;
-        if (y1 < 0 && y2 < 0) return;
-        if (y1 >= SCREEN_HEIGHT && y2 >= SCREEN_HEIGHT) return;
+        // sprites behind the wall are clipped to the rows it leaves free
+        if ((drawSeg.silhouette & SIL_TOP) != 0 && drawSeg.topClip == NO_CLIP) {
+            drawSeg.topClip = drawSegs.store(ceilingClip, start, stop);
+        }
+        if ((drawSeg.silhouette & SIL_BOTTOM) != 0 && drawSeg.bottomClip == NO_CLIP) {
+            drawSeg.bottomClip = drawSegs.store(floorClip, start, stop);
+        }
 
-        float scale = 1f * height / Math.abs(y2 - y1);
+        if (!occlusion) {
+            // let farther walls be drawn over this one as if it wasn't there
+            Arrays.fill(ceilingClip, start, stop + 1, -1);
+            Arrays.fill(floorClip, start, stop + 1, screenHeight);
+        }
+        stats.wallNanos += System.nanoTime() - wallStart;
+    }
 
-        float ty = tyOffset;
+    private void drawColumn(
+            WallTexture texture,
+            int x,
+            int yl,
+            int yh,
+            int textureMid,
+            int textureColumn,
+            int textureStep,
+            int colorMap
+    ) {
+        if (texture == null || yl > yh) {
+            return;
+        }
+        stats.columns++;
+        stats.wallPixels += yh - yl + 1;
 
-        // DOOM renders wall textures from top to bottom
-        for (int y = y2; y >= y1; y--) {
-            if (y < 0) break;
-            if (y < image.getHeight()) {
-                int pixel = texture.getRGB(tx % texture.getWidth(), Math.round(ty) % texture.getHeight());
-                image.setRGB(x, SCREEN_HEIGHT - 1 - y, pixel);
+        if (pool != null) {
+            if (columnCount == columnTextures.length) {
+                columnTextures = Arrays.copyOf(columnTextures, columnCount * 2);
+                columnCommands = Arrays.copyOf(columnCommands, columnCount * 2 * COLUMN_FIELDS);
             }
-            ty += scale;
+            int c = columnCount * COLUMN_FIELDS;
+            columnCommands[c] = x;
+            columnCommands[c + 1] = yl;
+            columnCommands[c + 2] = yh;
+            columnCommands[c + 3] = textureMid;
+            columnCommands[c + 4] = textureColumn;
+            columnCommands[c + 5] = textureStep;
+            columnCommands[c + 6] = colorMap;
+            columnTextures[columnCount++] = texture;
+        } else {
+            rasterColumn(texture, x, yl, yh, textureMid, textureColumn, textureStep, colorMap);
         }
+    }
 
-        int bottom = Math.max(0, y1);
-        int top = y2;
-        if (bottom < floorClip[x]) {
-            int prevFloor = floorClip[x];
-            floorClip[x] = bottom;
-            if (bottom < top && prevFloor != SCREEN_HEIGHT) {
-                floorPlane.top[x] = prevFloor - 1;
-                floorPlane.bottom[x] = top + 1;
+    private void rasterColumn(
+            WallTexture texture,
+            int x,
+            int yl,
+            int yh,
+            int textureMid,
+            int textureColumn,
+            int textureStep,
+            int colorMap
+    ) {
+        int offset = yl * screenWidth + x;
+        if (NO_TEXTURING) {
+            for (int y = yl; y <= yh; y++, offset += screenWidth) {
+                screen[offset] = colorMaps[colorMap + (UNTEXTURED_COLOR & 0xFF)];
             }
+            return;
         }
-        if (top > ceilingClip[x]) {
-            int prevCeiling = ceilingClip[x];
-            ceilingClip[x] = Math.max(ceilingClip[x], top);
-            if (top > bottom && prevCeiling != -1) {
-                ceilingPlane.top[x] = bottom - 1;
-                ceilingPlane.bottom[x] = prevCeiling + 1;
+
+        int height = texture.height();
+        int textureX = Math.floorMod(textureColumn, texture.width());
+        byte[] pixels = texture.columns()[textureX];
+        byte[] colorMaps = this.colorMaps;
+        int column = texture.offsets()[textureX];
+        // texture row of the first pixel, 16.16 fixed point
+        int frac = textureMid + (yl - centerY) * textureStep;
+
+        // DOOM renders wall textures from top to bottom
+        for (int y = yl; y <= yh; y++, offset += screenWidth) {
+            int row = (frac >> FRACBITS) % height;
+            if (row < 0) {
+                row += height;
             }
+            screen[offset] = colorMaps[colorMap + (pixels[column + row] & 0xFF)];
+            frac += textureStep;
         }
     }
 
-    private static boolean isLeaf(int nodeNumber) {
-        return (nodeNumber & (1 << 15)) != 0;
+    private WallTexture findTexture(int number) {
+        return number == NO_TEXTURE ? null : textures[number];
     }
 
-    private boolean isBoundingBoxInFrustum(BBox bbox) {
-        // Compute frustum boundary angles
-        double leftAngle = Math.toRadians(cameraAngle) - Math.toRadians(FOV) / 2;
-        double rightAngle = Math.toRadians(cameraAngle) + Math.toRadians(FOV) / 2;
+    private static boolean isLeaf(int nodeNumber) {
+        return (nodeNumber & PackedMap.NF_SUBSECTOR) != 0;
+    }
 
-        // Check if any corner is inside the frustum
-        if (isPointInFrustum(bbox.left(), bbox.top(), leftAngle, rightAngle)) {
+    /**
+     * Checks whether some part of the box may be visible, see R_CheckBBox.
+     * The box is reduced to the angle it takes in the view, clipped to the field of view
+     * and tested against the screen columns already covered by solid walls.
+     *
+     * @param boxes  box coordinates in the order of {@link PackedMap#nodeBBox}
+     * @param offset index of the top of the box
+     */
+    boolean checkBBox(int[] boxes, int offset) {
+        // find the corners of the box that define the edges from the current viewpoint
+        int boxX = cameraX <= boxes[offset + BOX_LEFT] ? 0 : cameraX < boxes[offset + BOX_RIGHT] ? 1 : 2;
+        int boxY = cameraY >= boxes[offset + BOX_TOP] ? 0 : cameraY > boxes[offset + BOX_BOTTOM] ? 1 : 2;
+        int boxPos = (boxY << 2) + boxX;
+        if (boxPos == 5) { // the camera is inside the box
             return true;
         }
-        if (isPointInFrustum(bbox.right(), bbox.top(), leftAngle, rightAngle)) {
+        int[] corners = CHECK_COORD[boxPos];
+
+        // check clip list for an open space
+        int angle1 = pointToAngle(boxes[offset + corners[0]], boxes[offset + corners[1]]);
+        int angle2 = pointToAngle(boxes[offset + corners[2]], boxes[offset + corners[3]]);
+
+        int span = angle1 - angle2;
+        // sitting on a line
+        if (Integer.compareUnsigned(span, ANG180) >= 0) {
             return true;
         }
-        if (isPointInFrustum(bbox.left(), bbox.bottom(), leftAngle, rightAngle)) {
-            return true;
+
+        if (!toColumns(angle1 - viewAngle, angle2 - viewAngle, span)) {
+            return false;
         }
-        if (isPointInFrustum(bbox.right(), bbox.bottom(), leftAngle, rightAngle)) {
-            return true;
+        return !solidSegs.isOccluded(columnX1, columnX2 - 1);
+    }
+
+    /**
+     * Clips angles relative to the view to the field of view and finds the screen columns between them.
+     * The columns are left in {@link #columnX1} and {@link #columnX2}.
+     *
+     * @return false if nothing is left after clipping or the angles don't cross a pixel
+     */
+    private boolean toColumns(int angle1, int angle2, int span) {
+        int tspan = angle1 + clipAngle;
+        if (Integer.compareUnsigned(tspan, 2 * clipAngle) > 0) {
+            tspan -= 2 * clipAngle;
+            // totally off the left edge
+            if (Integer.compareUnsigned(tspan, span) >= 0) {
+                return false;
+            }
+            angle1 = clipAngle;
+        }
+        tspan = clipAngle - angle2;
+        if (Integer.compareUnsigned(tspan, 2 * clipAngle) > 0) {
+            tspan -= 2 * clipAngle;
+            // totally off the right edge
+            if (Integer.compareUnsigned(tspan, span) >= 0) {
+                return false;
+            }
+            angle2 = -clipAngle;
         }
 
-        // Compute frustum boundary lines
-        double frustumFar = 10000; // Arbitrary large distance for frustum lines
-        double leftEndX = cameraX + Math.cos(leftAngle) * frustumFar;
-        double leftEndY = cameraY + Math.sin(leftAngle) * frustumFar;
-        double rightEndX = cameraX + Math.cos(rightAngle) * frustumFar;
-        double rightEndY = cameraY + Math.sin(rightAngle) * frustumFar;
+        // the angles are within the field of view now, shifted by 90° they index viewAngleToX
+        columnX1 = viewAngleToX[(angle1 + ANG90) >>> ANGLETOFINESHIFT];
+        columnX2 = viewAngleToX[(angle2 + ANG90) >>> ANGLETOFINESHIFT];
+        return columnX1 != columnX2;
+    }
 
-        // Check if any AABB edge intersects the frustum
-        if (linesIntersect(cameraX, cameraY, leftEndX, leftEndY, bbox.left(), bbox.top(), bbox.right(), bbox.top()) ||
-                linesIntersect(cameraX, cameraY, rightEndX, rightEndY, bbox.left(), bbox.top(), bbox.right(), bbox.top())) {
-            return true;
+    // angle from the camera to the point
+    private int pointToAngle(int x, int y) {
+        return Tables.pointToAngle(x - cameraX, y - cameraY);
+    }
+
+    // distance from the camera to the point in 16.16 fixed point, see R_PointToDist
+    private int pointToDist(int x, int y) {
+        int dx = Math.abs(x - cameraX);
+        int dy = Math.abs(y - cameraY);
+        if (dy > dx) {
+            int temp = dx;
+            dx = dy;
+            dy = temp;
         }
-        if (linesIntersect(cameraX, cameraY, leftEndX, leftEndY, bbox.right(), bbox.top(), bbox.right(), bbox.bottom()) ||
-                linesIntersect(cameraX, cameraY, rightEndX, rightEndY, bbox.right(), bbox.top(), bbox.right(), bbox.bottom())) {
-            return true;
+        if (dx == 0) {
+            return 0;
         }
-        if (linesIntersect(cameraX, cameraY, leftEndX, leftEndY, bbox.left(), bbox.bottom(), bbox.right(), bbox.bottom()) ||
-                linesIntersect(cameraX, cameraY, rightEndX, rightEndY, bbox.left(), bbox.bottom(), bbox.right(), bbox.bottom())) {
-            return true;
+        int angle = Tables.tanToAngle[Tables.slopeDiv(dy, dx)] + ANG90;
+        // dx / cos(angle)
+        return FixedPoint.div(dx << FRACBITS, Tables.fineSine(angle));
+    }
+
+    /**
+     * Scale of a wall seen at the given angle, in 16.16 fixed point, see R_ScaleFromGlobalAngle.
+     */
+    private int scaleFromGlobalAngle(int visAngle, int normalAngle, int distance) {
+        int angleA = ANG90 + (visAngle - viewAngle);
+        int angleB = ANG90 + (visAngle - normalAngle);
+        // both sines are always positive
+        int sineA = Tables.fineSine(angleA);
+        int sineB = Tables.fineSine(angleB);
+        int num = FixedPoint.mul(projection << FRACBITS, sineB);
+        int den = FixedPoint.mul(distance, sineA);
+        if (den > num >> FRACBITS) {
+            return Math.max(256, Math.min(64 * FRACUNIT, FixedPoint.div(num, den)));
         }
-        if (linesIntersect(cameraX, cameraY, leftEndX, leftEndY, bbox.left(), bbox.top(), bbox.left(), bbox.bottom()) ||
-                linesIntersect(cameraX, cameraY, rightEndX, rightEndY, bbox.left(), bbox.top(), bbox.left(), bbox.bottom())) {
-            return true;
+        return 64 * FRACUNIT;
+    }
+
+    // see R_ClearPlanes
+    private void clearPlanes() {
+        visPlanes.clear();
+        Arrays.fill(cachedHeight, 0);
+
+        // left to right mapping
+        int angle = viewAngle - ANG90;
+        // scale will be unit scale at the projection distance
+        baseXScale = FixedPoint.div(Tables.fineCosine(angle), projection << FRACBITS);
+        baseYScale = -FixedPoint.div(Tables.fineSine(angle), projection << FRACBITS);
+    }
+
+    /**
+     * Turns the columns of each plane into horizontal spans and draws them, see R_DrawPlanes.
+     */
+    private void drawPlanes() {
+        int viewZ = cameraZ + PLAYER_HEIGHT;
+        for (int i = 0; i < visPlanes.count(); i++) {
+            VisPlane plane = visPlanes.get(i);
+            if (plane.minX > plane.maxX || plane.flat == NO_TEXTURE) {
+                continue;
+            }
+            stats.planes++;
+            planeHeight = Math.abs(plane.height - viewZ) << FRACBITS;
+            planeFlat = flats[plane.flat];
+            planeLights = zLight[lightIndex(plane.light, 0)];
+
+            // the columns are shifted by one, so these are the columns right before and after the plane
+            plane.top[plane.maxX + 2] = UNUSED;
+            plane.top[plane.minX] = UNUSED;
+            for (int x = plane.minX; x <= plane.maxX + 1; x++) {
+                makeSpans(x, plane.top[x], plane.bottom[x], plane.top[x + 1], plane.bottom[x + 1]);
+            }
         }
+    }
 
-        return false;
+    // closes the spans in rows the plane leaves at column x and opens the ones it enters, see R_MakeSpans
+    private void makeSpans(int x, int t1, int b1, int t2, int b2) {
+        while (t1 < t2 && t1 <= b1) {
+            mapPlane(t1, spanStart[t1], x - 1);
+            t1++;
+        }
+        while (b1 > b2 && b1 >= t1) {
+            mapPlane(b1, spanStart[b1], x - 1);
+            b1--;
+        }
+        while (t2 < t1 && t2 <= b2) {
+            spanStart[t2] = x;
+            t2++;
+        }
+        while (b2 > b1 && b2 >= t2) {
+            spanStart[b2] = x;
+            b2--;
+        }
     }
 
-    // Check if a point is inside the frustum
-    private boolean isPointInFrustum(int px, int py, double leftAngle, double rightAngle) {
-        // Compute angle from camera to point
-        double angleToPoint = Math.atan2(py - cameraY, px - cameraX);
+    // draws row y from x1 to x2 of the current plane, see R_MapPlane and R_DrawSpan
+    private void mapPlane(int y, int x1, int x2) {
+        int distance;
+        int xStep;
+        int yStep;
+        if (planeHeight != cachedHeight[y]) {
+            cachedHeight[y] = planeHeight;
+            distance = cachedDistance[y] = FixedPoint.mul(planeHeight, ySlope[y]);
+            xStep = cachedXStep[y] = FixedPoint.mul(distance, baseXScale);
+            yStep = cachedYStep[y] = FixedPoint.mul(distance, baseYScale);
+        } else {
+            distance = cachedDistance[y];
+            xStep = cachedXStep[y];
+            yStep = cachedYStep[y];
+        }
 
-        // Normalize angles to [0, 2π] range
-        leftAngle = normalizeAngle(leftAngle);
-        rightAngle = normalizeAngle(rightAngle);
-        angleToPoint = normalizeAngle(angleToPoint);
+        int length = FixedPoint.mul(distance, distScale[x1]);
+        int angle = viewAngle + xToViewAngle[x1];
+        // position on the flat of the first pixel, the flat y axis points down
+        int xFrac = (cameraX << FRACBITS) + FixedPoint.mul(Tables.fineCosine(angle), length);
+        int yFrac = -(cameraY << FRACBITS) - FixedPoint.mul(Tables.fineSine(angle), length);
 
-        if (leftAngle <= rightAngle) {
-            return angleToPoint >= leftAngle && angleToPoint <= rightAngle;
+        int colorMap = planeLights[Math.min(distance >>> LIGHTZSHIFT, MAXLIGHTZ - 1)];
+        stats.spans++;
+        stats.spanPixels += x2 - x1 + 1;
+
+        if (pool != null) {
+            if (spanCount == spanFlats.length) {
+                spanFlats = Arrays.copyOf(spanFlats, spanCount * 2);
+                spanCommands = Arrays.copyOf(spanCommands, spanCount * 2 * SPAN_FIELDS);
+            }
+            int c = spanCount * SPAN_FIELDS;
+            spanCommands[c] = y;
+            spanCommands[c + 1] = x1;
+            spanCommands[c + 2] = x2;
+            spanCommands[c + 3] = xFrac;
+            spanCommands[c + 4] = yFrac;
+            spanCommands[c + 5] = xStep;
+            spanCommands[c + 6] = yStep;
+            spanCommands[c + 7] = colorMap;
+            spanFlats[spanCount++] = planeFlat;
         } else {
-            // Handles cases where the frustum crosses the -π/π boundary
-            return angleToPoint >= leftAngle || angleToPoint <= rightAngle;
+            rasterSpan(planeFlat, y, x1, x2, xFrac, yFrac, xStep, yStep, colorMap);
         }
     }
 
-    private static double normalizeAngle(double angle) {
-        while (angle < 0) angle += 2 * Math.PI;
-        while (angle >= 2 * Math.PI) angle -= 2 * Math.PI;
-        return angle;
+    private void rasterSpan(byte[] flat, int y, int x1, int x2, int xFrac, int yFrac, int xStep, int yStep, int colorMap) {
+        byte[] colorMaps = this.colorMaps;
+        int offset = y * screenWidth + x1;
+        for (int x = x1; x <= x2; x++) {
+            int spot = ((yFrac >> (FRACBITS - 6)) & (63 * 64)) + ((xFrac >> FRACBITS) & 63);
+            screen[offset++] = colorMaps[colorMap + (flat[spot] & 0xFF)];
+            xFrac += xStep;
+            yFrac += yStep;
+        }
     }
 
-    // Check if two line segments intersect
-    private static boolean linesIntersect(double x1, double y1, double x2, double y2,
-                                          double x3, double y3, double x4, double y4) {
-        double d = (x1 - x2) * (y3 - y4) - (y1 - y2) * (x3 - x4);
-        if (d == 0) return false; // Parallel lines
+    // runs the strip tasks of the frame, the tasks are reset first so the same ones serve every frame
+    private void drawStrips() {
+        for (DrawStrip task : stripTasks) {
+            task.reinitialize();
+            pool.execute(task);
+        }
+        // this thread runs strips too while it waits, a thread blocked in join or invoke allocates a wait node
+        pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        for (DrawStrip task : stripTasks) {
+            // rethrows what a strip has thrown, the tasks are done so it doesn't block
+            task.join();
+        }
+    }
 
-        double t = ((x1 - x3) * (y3 - y4) - (y1 - y3) * (x3 - x4)) / d;
-        double u = ((x1 - x3) * (y1 - y2) - (y1 - y3) * (x1 - x2)) / d;
+    /**
+     * Draws the recorded columns and spans that fall into columns {@code x1} to {@code x2} exclusive
+     * and turns them into colors, in the order the BSP walk found them.
+     */
+    private void drawStrip(int x1, int x2) {
+        for (int i = 0; i < columnCount; i++) {
+            int c = i * COLUMN_FIELDS;
+            int x = columnCommands[c];
+            if (x >= x1 && x < x2) {
+                rasterColumn(columnTextures[i], x, columnCommands[c + 1], columnCommands[c + 2], columnCommands[c + 3],
+                        columnCommands[c + 4], columnCommands[c + 5], columnCommands[c + 6]);
+            }
+        }
+        for (int i = 0; i < spanCount; i++) {
+            int c = i * SPAN_FIELDS;
+            int spanX1 = Math.max(x1, spanCommands[c + 1]);
+            int spanX2 = Math.min(x2 - 1, spanCommands[c + 2]);
+            if (spanX1 > spanX2) {
+                continue;
+            }
+            // move the flat position to the first column inside the strip
+            int skipped = spanX1 - spanCommands[c + 1];
+            int xStep = spanCommands[c + 5];
+            int yStep = spanCommands[c + 6];
+            rasterSpan(spanFlats[i], spanCommands[c], spanX1, spanX2, spanCommands[c + 3] + skipped * xStep,
+                    spanCommands[c + 4] + skipped * yStep, xStep, yStep, spanCommands[c + 7]);
+        }
+        drawSprites(x1, x2 - 1);
+        for (int y = 0; y < screenHeight; y++) {
+            for (int i = y * screenWidth + x1; i < y * screenWidth + x2; i++) {
+                rgb[i] = palette[screen[i] & 0xFF];
+            }
+        }
+    }
 
-        return t >= 0 && t <= 1 && u >= 0 && u <= 1;
+    // draws columns x1 to x2 of the sorted sprites, see R_DrawMasked
+    private void drawSprites(int x1, int x2) {
+        for (int i = 0; i < visSprites.count(); i++) {
+            VisSprite sprite = visSprites.get(i);
+            if (sprite.x1 <= x2 && sprite.x2 >= x1) {
+                drawSprite(sprite, Math.max(x1, sprite.x1), Math.min(x2, sprite.x2));
+            }
+        }
     }
 
-    private boolean projectPoint(int x, int y, int z, int[] output) {
-        // Convert angles to radians
-        float cameraRad = (float) Math.toRadians(cameraAngle);
-        float fovRad = (float) Math.toRadians(FOV);
+    /**
+     * Clips columns {@code x1} to {@code x2} of the sprite against the walls in front of it and draws them,
+     * see R_DrawSprite. The clip rows of other columns are left alone, so strips can draw the same sprite at once.
+     */
+    private void drawSprite(VisSprite sprite, int x1, int x2) {
+        int[] clipTop = spriteClipTop;
+        int[] clipBottom = spriteClipBottom;
+        // -2 marks a column no wall has clipped yet
+        Arrays.fill(clipTop, x1, x2 + 1, -2);
+        Arrays.fill(clipBottom, x1, x2 + 1, -2);
+
+        // drawsegs are stored from the nearest to the farthest, scan them backwards like R_DrawSprite does
+        // for the walls that hide a part of the sprite
+        for (int i = drawSegs.count() - 1; i >= 0; i--) {
+            DrawSeg ds = drawSegs.get(i);
+            if (ds.x1 > x2 || ds.x2 < x1 || ds.silhouette == SIL_NONE) {
+                continue;
+            }
+            int lowScale = Math.min(ds.scale1, ds.scale2);
+            int highScale = Math.max(ds.scale1, ds.scale2);
+            if (highScale < sprite.scale || (lowScale < sprite.scale && !isOnBackSide(sprite.gx, sprite.gy, ds.seg))) {
+                // the wall is behind the sprite
+                continue;
+            }
 
-        // Step 1: Translate world coordinates (move camera to the origin)
-        float Xp = x - cameraX;
-        float Yp = y - cameraY;
-        float Zp = z - (cameraZ + PLAYER_HEIGHT);
+            // the sprite may show above or below the wall
+            int silhouette = ds.silhouette;
+            if (sprite.gz >= ds.bottomSilHeight) {
+                silhouette &= ~SIL_BOTTOM;
+            }
+            if (sprite.gzt <= ds.topSilHeight) {
+                silhouette &= ~SIL_TOP;
+            }
+            int r1 = Math.max(ds.x1, x1);
+            int r2 = Math.min(ds.x2, x2);
+            for (int x = r1; x <= r2; x++) {
+                if ((silhouette & SIL_BOTTOM) != 0 && clipBottom[x] == -2) {
+                    clipBottom[x] = drawSegs.opening(ds.bottomClip, x);
+                }
+                if ((silhouette & SIL_TOP) != 0 && clipTop[x] == -2) {
+                    clipTop[x] = drawSegs.opening(ds.topClip, x);
+                }
+            }
+        }
 
-        // Step 2: Rotate around Z-axis (align camera view)
-        float Xr = (float) (Xp * Math.cos(-cameraRad) - Yp * Math.sin(-cameraRad));
-        float Yr = (float) (-Xp * Math.sin(-cameraRad) + Yp * Math.cos(-cameraRad));
-        float Zr = Zp;  // No change in depth
+        Graphic patch = sprite.patch;
+        int patchHeight = patch.height();
+        byte[] pixels = patch.pixels();
+        long[] opaque = patch.opaque();
+        byte[] colorMaps = this.colorMaps;
+        int colorMap = sprite.colorMap;
+        int iScale = Math.abs(sprite.xiScale);
+        // screen row of the patch top and bottom, 16.16 fixed point
+        long topScreen = ((long) centerY << FRACBITS) - (((long) sprite.textureMid * sprite.scale) >> FRACBITS);
+        long bottomScreen = topScreen + (long) sprite.scale * patchHeight;
+        int spriteTop = (int) Math.max(-1, (topScreen + FRACUNIT - 1) >> FRACBITS);
+        int spriteBottom = (int) Math.min(screenHeight, (bottomScreen - 1) >> FRACBITS);
+
+        int frac = sprite.startFrac + (x1 - sprite.x1) * sprite.xiScale;
+        for (int x = x1; x <= x2; x++, frac += sprite.xiScale) {
+            int top = clipTop[x] == -2 ? -1 : clipTop[x];
+            int bottom = clipBottom[x] == -2 ? screenHeight : clipBottom[x];
+            int yl = Math.max(spriteTop, top + 1);
+            int yh = Math.min(spriteBottom, bottom - 1);
+            int column = frac >> FRACBITS;
+            if (yl > yh || column < 0 || column >= patch.width()) {
+                continue;
+            }
 
-        // Step 3: Perspective Projection
-        if (Xr <= 0) return false;  // If behind the camera, don't render
+            int columnStart = column * patchHeight;
+            int rowFrac = sprite.textureMid + (yl - centerY) * iScale;
+            int offset = yl * screenWidth + x;
+            // transparent pixels of the patch are skipped, see R_DrawMaskedColumn
+            for (int y = yl; y <= yh; y++, offset += screenWidth, rowFrac += iScale) {
+                int row = rowFrac >> FRACBITS;
+                if (row < 0 || row >= patchHeight) {
+                    continue;
+                }
+                int index = columnStart + row;
+                if ((opaque[index >>> 6] & (1L << index)) != 0) {
+                    screen[offset] = colorMaps[colorMap + (pixels[index] & 0xFF)];
+                }
+            }
+        }
+    }
 
-        float S = (float) (SCREEN_WIDTH / (2 * Math.tan(fovRad / 2)));
+    // checks whether the point is behind the seg, see R_PointOnSegSide
+    private boolean isOnBackSide(int x, int y, int seg) {
+        int x1 = map.vertexX[map.segStart[seg]];
+        int y1 = map.vertexY[map.segStart[seg]];
+        int x2 = map.vertexX[map.segEnd[seg]];
+        int y2 = map.vertexY[map.segEnd[seg]];
+        long left = (long) (y2 - y1) * (x - x1);
+        long right = (long) (y - y1) * (x2 - x1);
+        return right >= left;
+    }
 
-        int screenX = Math.round(SCREEN_WIDTH / 2f + (Yr / Xr) * S);
-        int screenY = Math.round(SCREEN_HEIGHT / 2f + (Zr / Xr) * S);
-        output[0] = screenX;
-        output[1] = screenY;
+    private final class DrawStrip extends RecursiveAction {
+        private final int x1;
+        private final int x2;
 
-        return true;
-    }
+        DrawStrip(int x1, int x2) {
+            this.x1 = x1;
+            this.x2 = x2;
+        }
 
-    private VisPlane getVisPlane(String texture, int height) {
-        for (VisPlane vp : visPlanes) {
-            if (vp.texture.equals(texture) && vp.height == height) {
-                return vp;
-            }
+        @Override
+        protected void compute() {
+            drawStrip(x1, x2);
         }
-        VisPlane result = new VisPlane(texture, height);
-        visPlanes.add(result);
-        return result;
     }
 
-    private void drawVisPlanes() {
-//        for (int x = 0; x < SCREEN_WIDTH; x++) {
-//            if (floorClip[x] >= ceilingClip[x]) continue;
-//            g.setColor(Color.GRAY);
-//            g.drawLine(x, SCREEN_HEIGHT - 1, x, SCREEN_HEIGHT - 1 - floorClip[x]);
-//            g.setColor(Color.BLUE);
-//            g.drawLine(x, 0, x, SCREEN_HEIGHT - 1 - ceilingClip[x]);
-//        }
+    /**
+     * Thing that can be seen, with its position and height in the map.
+     */
+    private record MapSprite(int x, int y, int z, int angle, SpriteFrame frame, boolean bright) {
+    }
 
-        for (VisPlane vp : visPlanes) {
-            for (int x = 0; x < SCREEN_WIDTH; x++) {
-                if (vp.bottom[x] > vp.top[x]) continue;
-                g.setColor(Color.GREEN);
-                g.drawLine(x, SCREEN_HEIGHT - 1 - vp.bottom[x], x, SCREEN_HEIGHT - 1 - vp.top[x]);
+    /**
+     * Patches of a sprite frame as seen from the 8 directions around the thing, see R_InitSpriteDefs.
+     *
+     * @param rotates false if the frame looks the same from all directions
+     * @param flipped true for the directions that show the patch mirrored
+     */
+    private record SpriteFrame(boolean rotates, Graphic[] patches, boolean[] flipped) {
+
+        // the frame of the sprite named like "TROOA", null if the patches of some direction are missing
+        static SpriteFrame find(String name, Iterable<String> lumps, Source<Graphic> patches) throws WadException {
+            Graphic[] rotations = new Graphic[8];
+            boolean[] flipped = new boolean[8];
+            Graphic single = patches.find(name + "0");
+            if (single != null) {
+                Arrays.fill(rotations, single);
+                return new SpriteFrame(false, rotations, flipped);
             }
+
+            // a lump like TROOA2A8 is direction 2 of frame A and direction 8 of frame A mirrored
+            String sprite = name.substring(0, 4);
+            char frame = name.charAt(4);
+            // only the lumps of the frame are decoded
+            for (String lump : lumps) {
+                if (lump.length() >= 6 && lump.startsWith(name)) {
+                    int rotation = lump.charAt(5) - '1';
+                    if (rotation >= 0 && rotation < 8) {
+                        rotations[rotation] = patches.find(lump);
+                        flipped[rotation] = false;
+                    }
+                }
+                if (lump.length() == 8 && lump.startsWith(sprite) && lump.charAt(6) == frame) {
+                    int rotation = lump.charAt(7) - '1';
+                    if (rotation >= 0 && rotation < 8 && rotations[rotation] == null) {
+                        rotations[rotation] = patches.find(lump);
+                        flipped[rotation] = true;
+                    }
+                }
+            }
+            for (Graphic rotation : rotations) {
+                if (rotation == null) {
+                    return null;
+                }
+            }
+            return new SpriteFrame(true, rotations, flipped);
         }
     }
 
-    private static float lineLength(int x1, int y1, int x2, int y2) {
-        return (float) Math.sqrt(Math.pow(x2 - x1, 2) + Math.pow(y2 - y1, 2));
-    }
+    // palette, colormaps, flats and sprites the renderer reads once when it is created
+    private record Assets(
+            Color[] colors,
+            byte[][] colorMaps,
+            Source<byte[][]> flats,
+            Iterable<String> spriteNames,
+            Source<Graphic> sprites
+    ) {
 
-    private static class VisPlane {
-        final String texture;
-        final int height;
+        static Assets of(WadFile wad) {
+            Map<String, Graphic> patches = new HashMap<>();
+            Map<String, byte[][]> flats = new HashMap<>();
+            collectLumps(wad.directory, patches, flats);
+            return new Assets(wad.palettes[0], wad.colorMaps, flats::get, patches.keySet(), patches::get);
+        }
 
-        final int[] top = new int[SCREEN_WIDTH];
-        final int[] bottom = new int[SCREEN_WIDTH];
+        static Assets of(ResourceStack resources) throws WadException {
+            return new Assets(
+                    resources.getPalettes()[0],
+                    resources.getColorMaps(),
+                    name -> decode(resources.findLump(ResourceStack.Namespace.FLATS, name), LumpDecoder.FLAT),
+                    resources.getNames(ResourceStack.Namespace.SPRITES),
+                    name -> decode(resources.findLump(ResourceStack.Namespace.SPRITES, name), LumpDecoder.PICTURE)
+            );
+        }
 
-        private VisPlane(String texture, int height) {
-            this.texture = texture;
-            this.height = height;
+        private static <T> T decode(WadLump lump, LumpReader<T> reader) throws WadException {
+            return lump != null ? lump.decode(reader) : null;
         }
     }
 
+    // finds a resource by its upper case name, null if there is none
+    @FunctionalInterface
+    private interface Source<S> {
+        S find(String name) throws WadException;
+    }
 }
-
@@ -1,10 +1,48 @@
 package com.dpforge.doom.wad;
 
+import java.util.Arrays;
+
+/**
+ * Picture with pixels stored column by column, the same order patches use on disk.
+ *
+ * @param pixels palette indexes, the pixel at (x, y) is at {@code x * height + y}
+ * @param opaque bit per pixel in the same order as {@code pixels}, transparent pixels have it cleared
+ */
 public record Graphic(
         int width,
         int height,
         int xOffset,
         int yOffset,
-        Byte[][] pixels
+        byte[] pixels,
+        long[] opaque
 ) {
+
+    public Graphic(int width, int height, int xOffset, int yOffset) {
+        this(width, height, xOffset, yOffset, new byte[width * height], new long[(width * height + 63) >>> 6]);
+    }
+
+    public boolean isOpaque(int x, int y) {
+        int index = x * height + y;
+        return (opaque[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * @return palette index of the pixel, meaningless if the pixel is transparent
+     */
+    public int getPixel(int x, int y) {
+        return pixels[x * height + y] & 0xFF;
+    }
+
+    void setPixel(int x, int y, byte colorIndex) {
+        int index = x * height + y;
+        pixels[index] = colorIndex;
+        opaque[index >>> 6] |= 1L << index;
+    }
+
+    public boolean contentEquals(Graphic other) {
+        return width == other.width
+                && height == other.height
+                && Arrays.equals(pixels, other.pixels)
+                && Arrays.equals(opaque, other.opaque);
+    }
 }
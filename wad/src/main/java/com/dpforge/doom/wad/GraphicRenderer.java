@@ -3,27 +3,35 @@ package com.dpforge.doom.wad;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.util.Map;
 
 public class GraphicRenderer {
     private Color[] palette;
+    // palette as ARGB values
+    private int[] argb;
 
     public void setPalette(Color[] palette) {
         this.palette = palette;
+        this.argb = new int[palette.length];
+        for (int i = 0; i < palette.length; i++) {
+            argb[i] = palette[i].getRGB();
+        }
     }
 
     public BufferedImage render(Graphic graphic) {
         if (palette == null) {
             throw new IllegalStateException("Palette is not set");
         }
-        BufferedImage result = new BufferedImage(graphic.width(), graphic.height(), BufferedImage.TYPE_INT_ARGB);
-        for (int y = 0; y < graphic.height(); y++) {
-            for (int x = 0; x < graphic.width(); x++) {
-                Byte colorIndex = graphic.pixels()[y][x];
-                if (colorIndex == null) {
-                    continue;
+        int width = graphic.width();
+        int height = graphic.height();
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] target = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                if (graphic.isOpaque(x, y)) {
+                    target[y * width + x] = argb[graphic.getPixel(x, y)];
                 }
-                result.setRGB(x, y, palette[colorIndex & 0xFF].getRGB());
             }
         }
         return result;
@@ -45,11 +53,39 @@ public class GraphicRenderer {
         return result;
     }
 
+    /**
+     * Draws a texture composed by {@link TextureManager}, pixels no patch covers get the first palette color.
+     */
+    public BufferedImage render(WallTexture texture) {
+        if (palette == null) {
+            throw new IllegalStateException("Palette is not set");
+        }
+        int width = texture.width();
+        int height = texture.height();
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] target = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                target[y * width + x] = argb[texture.getPixel(x, y)];
+            }
+        }
+        return result;
+    }
+
     public BufferedImage render(Texture texture, WadFile wadFile, Map<String, BufferedImage> graphics) {
+        return render(texture, wadFile.pnames, graphics);
+    }
+
+    /**
+     * Draws the patches of the texture over each other.
+     *
+     * @param graphics rendered patches by upper case lump name
+     */
+    public BufferedImage render(Texture texture, String[] pnames, Map<String, BufferedImage> graphics) {
         BufferedImage result = new BufferedImage(texture.width(), texture.height(), BufferedImage.TYPE_INT_ARGB);
         Graphics2D g = result.createGraphics();
         for (TexturePatch p : texture.patches()) {
-            String name = wadFile.pnames[p.patchNumber()].toUpperCase();
+            String name = pnames[p.patchNumber()].toUpperCase();
             BufferedImage patch = graphics.get(name);
             g.drawImage(patch, p.xOffset(), p.yOffset(), null);
         }
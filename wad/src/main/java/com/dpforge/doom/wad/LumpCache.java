@@ -0,0 +1,89 @@
+package com.dpforge.doom.wad;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of decoded lumps, bounded by the total size of the source lumps.
+ */
+class LumpCache {
+
+    private final long maxWeight;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long weight;
+
+    private long hits;
+    private long misses;
+
+    LumpCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Forms a whole map is decoded to. A map is decoded from several lumps, so it is cached under its marker lump
+     * with the form instead of a {@link LumpReader}.
+     */
+    enum MapForm {
+        RECORDS, PACKED
+    }
+
+    synchronized Object get(int lump, LumpReader<?> reader) {
+        return get(new Key(lump, reader));
+    }
+
+    synchronized Object getMap(int marker, MapForm form) {
+        return get(new Key(marker, form));
+    }
+
+    synchronized void put(int lump, LumpReader<?> reader, Object value, long valueWeight) {
+        put(new Key(lump, reader), value, valueWeight);
+    }
+
+    synchronized void putMap(int marker, MapForm form, Object value, long valueWeight) {
+        put(new Key(marker, form), value, valueWeight);
+    }
+
+    private Object get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    private void put(Key key, Object value, long valueWeight) {
+        Entry previous = entries.put(key, new Entry(value, valueWeight));
+        if (previous != null) {
+            weight -= previous.weight;
+        }
+        weight += valueWeight;
+        var iterator = entries.entrySet().iterator();
+        // always keep the newest entry even if it alone is bigger than the limit
+        while (weight > maxWeight && entries.size() > 1) {
+            Map.Entry<Key, Entry> eldest = iterator.next();
+            weight -= eldest.getValue().weight;
+            iterator.remove();
+        }
+    }
+
+    synchronized long weight() {
+        return weight;
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    // decoding is the LumpReader of the lump or the MapForm of a map
+    private record Key(int lump, Object decoding) {
+    }
+
+    private record Entry(Object value, long weight) {
+    }
+}
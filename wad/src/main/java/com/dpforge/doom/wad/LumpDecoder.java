@@ -0,0 +1,330 @@
+package com.dpforge.doom.wad;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decoders of individual lumps. Every method expects the reader to be positioned at the start of the lump.
+ */
+final class LumpDecoder {
+
+    static final int PALETTE_COLOR_NUMBER = 256;
+    static final int PALETTE_COLOR_SIZE = 3;
+    static final int COLOR_MAP_SIZE = 256;
+    static final int FLAT_SIZE = 64;
+
+    static final LumpReader<Graphic> PICTURE = LumpDecoder::readPicture;
+    static final LumpReader<byte[][]> FLAT = LumpDecoder::readFlat;
+    static final LumpReader<byte[]> RAW = (reader, size) -> reader.readBytes(size);
+    static final LumpReader<Color[][]> PLAYPAL = LumpDecoder::readPlayPal;
+    static final LumpReader<byte[][]> COLORMAP = LumpDecoder::readColorMap;
+    static final LumpReader<String[]> PNAMES = LumpDecoder::readPNames;
+    static final LumpReader<List<Texture>> TEXTURES = LumpDecoder::readTextures;
+
+    private LumpDecoder() {
+    }
+
+    static Color[][] readPlayPal(BinaryReader reader, int size) {
+        int paletteCount = size / (PALETTE_COLOR_NUMBER * PALETTE_COLOR_SIZE);
+        Color[][] palettes = new Color[paletteCount][];
+        for (int paletteIndex = 0; paletteIndex < paletteCount; paletteIndex++) {
+            Color[] palette = palettes[paletteIndex] = new Color[PALETTE_COLOR_NUMBER];
+            for (int colorIndex = 0; colorIndex < PALETTE_COLOR_NUMBER; colorIndex++) {
+                int r = reader.readInt8();
+                int g = reader.readInt8();
+                int b = reader.readInt8();
+                palette[colorIndex] = new Color(r, g, b);
+            }
+        }
+        return palettes;
+    }
+
+    static byte[][] readColorMap(BinaryReader reader, int size) {
+        int mapCount = size / COLOR_MAP_SIZE;
+        byte[][] colorMaps = new byte[mapCount][];
+        for (int i = 0; i < mapCount; i++) {
+            colorMaps[i] = reader.readBytes(COLOR_MAP_SIZE);
+        }
+        return colorMaps;
+    }
+
+    static Thing[] readThings(BinaryReader reader, int size) throws WadException {
+        int thingCount = size / 10;
+        Thing[] things = new Thing[thingCount];
+        for (int i = 0; i < thingCount; i++) {
+            int x = reader.readSignedInt16();
+            int y = reader.readSignedInt16();
+            int angle = reader.readInt16();
+            int type = reader.readInt16();
+            int flags = reader.readInt16();
+            things[i] = new Thing(x, y, angle, ThingType.find(type), flags);
+        }
+        return things;
+    }
+
+    static LineDef[] readLineDefs(BinaryReader reader, int lumpSize) {
+        int lineDefCount = lumpSize / 14;
+        LineDef[] lineDefs = new LineDef[lineDefCount];
+        for (int i = 0; i < lineDefCount; i++) {
+            int startVertex = reader.readInt16();
+            int endVertex = reader.readInt16();
+            int flags = reader.readInt16();
+            int specialType = reader.readInt16();
+            int sectorTag = reader.readInt16();
+            int rightSideDef = reader.readInt16();
+            int leftSideDef = reader.readInt16();
+            lineDefs[i] = new LineDef(
+                    startVertex, endVertex, flags, specialType, sectorTag, rightSideDef, leftSideDef
+            );
+        }
+        return lineDefs;
+    }
+
+    static SideDef[] readSideDefs(BinaryReader reader, int lumpSize) {
+        int sideDefCount = lumpSize / 30;
+        SideDef[] sideDefs = new SideDef[sideDefCount];
+        for (int i = 0; i < sideDefCount; i++) {
+            int xOffset = reader.readSignedInt16();
+            int yOffset = reader.readSignedInt16();
+            String upperTexture = reader.readNullPaddedAsciiString(8);
+            String lowerTexture = reader.readNullPaddedAsciiString(8);
+            String middleTexture = reader.readNullPaddedAsciiString(8);
+            int facingSectorNumber = reader.readInt16();
+            sideDefs[i] = new SideDef(
+                    xOffset, yOffset, upperTexture, lowerTexture, middleTexture, facingSectorNumber
+            );
+        }
+        return sideDefs;
+    }
+
+    static Vertex[] readVertexes(BinaryReader reader, int lumpSize) {
+        int vertexCount = lumpSize / 4;
+        Vertex[] vertexes = new Vertex[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            int x = reader.readSignedInt16();
+            int y = reader.readSignedInt16();
+            vertexes[i] = new Vertex(x, y);
+        }
+        return vertexes;
+    }
+
+    static Seg[] readSegs(BinaryReader reader, int lumpSize) {
+        int segCount = lumpSize / 12;
+        Seg[] segs = new Seg[segCount];
+        for (int i = 0; i < segCount; i++) {
+            int startVertex = reader.readInt16();
+            int endVertex = reader.readInt16();
+            int angle = reader.readInt16();
+            int lineDef = reader.readInt16();
+            Seg.Direction direction = Seg.Direction.values()[reader.readInt16()];
+            int offset = reader.readInt16();
+            segs[i] = new Seg(startVertex, endVertex, angle, lineDef, direction, offset);
+        }
+        return segs;
+    }
+
+    static SSector[] readSSectors(BinaryReader reader, int lumpSize) {
+        int ssectorCount = lumpSize / 4;
+        SSector[] ssectors = new SSector[ssectorCount];
+        for (int i = 0; i < ssectorCount; i++) {
+            int segCount = reader.readInt16();
+            int firstSeg = reader.readInt16();
+            ssectors[i] = new SSector(segCount, firstSeg);
+        }
+        return ssectors;
+    }
+
+    static Node[] readNodes(BinaryReader reader, int lumpSize) {
+        int nodeCount = lumpSize / 28;
+        Node[] nodes = new Node[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            int partitionLineX = reader.readSignedInt16();
+            int partitionLineY = reader.readSignedInt16();
+            int partitionLineDX = reader.readSignedInt16();
+            int partitionLineDY = reader.readSignedInt16();
+            BBox rightBBox = readBBox(reader);
+            BBox leftBBox = readBBox(reader);
+            int rightChild = reader.readInt16();
+            int leftChild = reader.readInt16();
+            nodes[i] = new Node(
+                    partitionLineX, partitionLineY,
+                    partitionLineDX, partitionLineDY,
+                    rightBBox, leftBBox,
+                    rightChild, leftChild
+            );
+        }
+        return nodes;
+    }
+
+    private static BBox readBBox(BinaryReader reader) {
+        int top = reader.readSignedInt16();
+        int bottom = reader.readSignedInt16();
+        int left = reader.readSignedInt16();
+        int right = reader.readSignedInt16();
+        return new BBox(top, bottom, left, right);
+    }
+
+    static Sector[] readSectors(BinaryReader reader, int lumpSize) {
+        int sectorCount = lumpSize / 26;
+        Sector[] sectors = new Sector[sectorCount];
+        for (int i = 0; i < sectorCount; i++) {
+            int floorHeight = reader.readSignedInt16();
+            int ceilingHeight = reader.readSignedInt16();
+            String floorTexture = reader.readNullPaddedAsciiString(8);
+            String ceilingTexture = reader.readNullPaddedAsciiString(8);
+            int lightLevel = reader.readInt16();
+            int type = reader.readInt16();
+            int tag = reader.readInt16();
+            sectors[i] = new Sector(
+                    floorHeight, ceilingHeight, floorTexture, ceilingTexture, lightLevel, type, tag
+            );
+        }
+        return sectors;
+    }
+
+    static List<Texture> readTextures(BinaryReader reader, int lumpSize) throws WadException {
+        int lumpStart = reader.getOffset();
+        int textureCount = reader.readInt32();
+        int[] textureOffsets = new int[textureCount];
+        for (int i = 0; i < textureCount; i++) {
+            textureOffsets[i] = reader.readInt32();
+        }
+
+        int headerEnd = reader.getOffset();
+        int totalCount = 0;
+        List<Texture> textures = new ArrayList<>(textureCount);
+
+        for (int i = 0; i < textureCount; i++) {
+            int textureStart = lumpStart + textureOffsets[i];
+            if (textureStart < headerEnd || textureStart >= lumpStart + lumpSize) {
+                throw new WadException("Texture is outside of lump");
+            }
+
+            reader.setOffset(textureStart);
+            textures.add(readMapTexture(reader));
+            int textureEnd = reader.getOffset();
+            totalCount += textureEnd - textureStart;
+        }
+
+        if (totalCount > lumpSize) {
+            throw new WadException("Read more texture data (%d) than expected (%d)", totalCount, lumpSize);
+        }
+        return textures;
+    }
+
+    private static Texture readMapTexture(BinaryReader reader) {
+        String name = reader.readNullPaddedAsciiString(8);
+        int masked = reader.readInt32();
+        int width = reader.readInt16();
+        int height = reader.readInt16();
+        reader.readInt32(); // column directory
+        int patchCount = reader.readInt16();
+        TexturePatch[] patches = new TexturePatch[patchCount];
+        for (int i = 0; i < patchCount; i++) {
+            patches[i] = readTexturePatch(reader);
+        }
+        return new Texture(name, masked, width, height, patches);
+    }
+
+    private static TexturePatch readTexturePatch(BinaryReader reader) {
+        // patches may start above or to the left of the texture
+        int xOffset = reader.readSignedInt16();
+        int yOffset = reader.readSignedInt16();
+        int patchNumber = reader.readInt16();
+        reader.readInt16(); // step dir
+        reader.readInt16(); // color map
+        return new TexturePatch(xOffset, yOffset, patchNumber);
+    }
+
+    static String[] readPNames(BinaryReader reader, int lumpSize) {
+        int patchCount = reader.readInt32();
+        String[] pnames = new String[patchCount];
+        for (int i = 0; i < patchCount; i++) {
+            pnames[i] = reader.readNullPaddedAsciiString(8);
+        }
+        return pnames;
+    }
+
+    static Graphic readPicture(BinaryReader reader, int lumpSize) throws WadException {
+        if (lumpSize < 8) {
+            throw new WadException("Picture header is outside of lump");
+        }
+        int lumpStart = reader.getOffset();
+        int width = reader.readInt16();
+        int height = reader.readInt16();
+        int xOffset = reader.readSignedInt16();
+        int yOffset = reader.readSignedInt16();
+        if (8L + 4L * width > lumpSize) {
+            throw new WadException("Picture columns are outside of lump");
+        }
+        int headerEnd = reader.getOffset();
+
+        var columnOffsets = new int[width];
+        for (int i = 0; i < width; i++) {
+            columnOffsets[i] = reader.readInt32();
+        }
+
+        var graphic = new Graphic(width, height, xOffset, yOffset);
+        int totalCount = 0;
+
+        for (int i = 0; i < width; i++) {
+            int columnStart = lumpStart + columnOffsets[i];
+            if (columnStart < headerEnd || columnStart >= lumpStart + lumpSize) {
+                throw new WadException("Picture column is outside of lump");
+            }
+
+            reader.setOffset(columnStart);
+            readPictureColumn(reader, i, graphic, lumpStart + lumpSize);
+            int columnEnd = reader.getOffset();
+            totalCount += columnEnd - columnStart;
+        }
+
+        if (totalCount > lumpSize) {
+            throw new WadException("Read more picture data (%d) than expected (%d)", totalCount, lumpSize);
+        }
+
+        return graphic;
+    }
+
+    private static void readPictureColumn(BinaryReader reader, int col, Graphic graphic, int lumpEnd)
+            throws WadException {
+        while (true) {
+            if (reader.getOffset() >= lumpEnd) {
+                throw new WadException("Picture column %d is outside of lump", col);
+            }
+            int rowStart = reader.readInt8();
+            if (rowStart == 0xFF) {
+                break;
+            }
+            if (reader.getOffset() >= lumpEnd) {
+                throw new WadException("Picture column %d is outside of lump", col);
+            }
+            int length = reader.readInt8();
+            // the pixels and a padding byte on each side of them
+            if (reader.getOffset() + length + 2 > lumpEnd) {
+                throw new WadException("Picture column %d is outside of lump", col);
+            }
+            if (rowStart + length > graphic.height()) {
+                throw new WadException("Post %d+%d of picture column %d is below its height %d",
+                        rowStart, length, col, graphic.height());
+            }
+            reader.readInt8(); // padding
+            for (int i = 0; i < length; i++) {
+                graphic.setPixel(col, rowStart + i, (byte) reader.readInt8());
+            }
+            reader.readInt8(); // padding
+        }
+    }
+
+    static byte[][] readFlat(BinaryReader reader, int lumpSize) throws WadException {
+        if (lumpSize != FLAT_SIZE * FLAT_SIZE) {
+            throw new WadException("Unexpected floor size: %d", lumpSize);
+        }
+        var pixels = new byte[FLAT_SIZE][];
+        for (int i = 0; i < FLAT_SIZE; i++) {
+            pixels[i] = reader.readBytes(FLAT_SIZE);
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,9 @@
+package com.dpforge.doom.wad;
+
+/**
+ * Decodes one lump. The reader is positioned at the start of the lump.
+ */
+@FunctionalInterface
+interface LumpReader<T> {
+    T read(BinaryReader reader, int size) throws WadException;
+}
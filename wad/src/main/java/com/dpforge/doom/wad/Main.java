@@ -4,32 +4,29 @@ import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 
 public class Main {
-    private static final GraphicRenderer graphicsRenderer = new GraphicRenderer();
-    private static final SoundRenderer soundRenderer = new SoundRenderer();
-    private static final Map<String, BufferedImage> graphics = new HashMap<>();
-
     private static final boolean WRITE_RESOURCE_TO_FILE = false;
 
     public static void main(String[] args) throws IOException, WadException {
         File wadFile = new File("../doom-jfx/doom2.wad");
-        WadFile wad = new WadFileReader().read(wadFile);
-
-        graphicsRenderer.setPalette(wad.palettes[0]);
+        ResourceStack resources = ResourceStack.open(wadFile);
 
         var output = new File("output");
         FileUtil.deleteDirectory(output);
 
-        outputDirectory(output, wad.directory);
-        // textures rely on graphics from the directory
-        outputTextures(output, wad);
+        var pipeline = new ExportPipeline(resources.getWads().get(0), output, WRITE_RESOURCE_TO_FILE,
+                Runtime.getRuntime().availableProcessors());
+        pipeline.run();
+        printStats(pipeline);
 
-        WadMap map = wad.maps.get("MAP01");
+        PackedMap map = resources.getPackedMap("MAP01");
 
-        var renderer = new GameRenderer(map, graphics);
+        // textures composed by an earlier run are read from the cache
+        AssetCache assets = AssetCache.open(resources.getWads().get(0), new File("cache"));
+        var renderer = new GameRenderer(resources, map, new TextureManager(assets),
+                GameRenderer.DEFAULT_WIDTH, GameRenderer.DEFAULT_HEIGHT, GameRenderer.DEFAULT_FOV);
         for (Thing t : map.things) {
             if (t.type() == ThingType.PLAYER_1_START) {
                 renderer.setCamera(t.x(), t.y(), 90f);
@@ -41,51 +38,19 @@ public class Main {
         FileUtil.ensureParentExist(frameFile);
         ImageIO.write(renderer.image, "PNG", frameFile);
 
-        //renderMap(output, map);
+        //renderMap(output, resources.getMap("MAP01"), pipeline.getGraphics());
     }
 
-    private static void outputDirectory(File output, WadDirectory directory) throws IOException {
-        File dir = new File(output, directory.name.isEmpty() ? "lumps" : directory.name);
-
-        for (var entry : directory.graphics.entrySet()) {
-            var file = new File(dir, String.format("graphics/%s.png", entry.getKey()));
-            BufferedImage render = graphicsRenderer.render(entry.getValue());
-            writeImage(render, file);
-            graphics.put(entry.getKey(), render);
-        }
-
-        for (var entry : directory.flats.entrySet()) {
-            var file = new File(dir, String.format("flat/%s.png", entry.getKey()));
-            BufferedImage render = graphicsRenderer.render(entry.getValue());
-            writeImage(render, file);
-            graphics.put(entry.getKey(), render);
-        }
-
-        if (WRITE_RESOURCE_TO_FILE) {
-            for (var entry : directory.sounds.entrySet()) {
-                var file = new File(dir, String.format("sound/%s.wav", entry.getKey()));
-                FileUtil.ensureParentExist(file);
-                soundRenderer.renderWav(file, entry.getValue());
-            }
-        }
-
-        for (var d : directory.directories) {
-            outputDirectory(dir, d);
-        }
-    }
-
-    private static void outputTextures(File output, WadFile wad) throws IOException {
-        File dir = new File(output, "textures");
-
-        for (var entry : wad.textures.entrySet()) {
-            var file = new File(dir, String.format("%s.png", entry.getKey()));
-            BufferedImage render = graphicsRenderer.render(entry.getValue(), wad, graphics);
-            writeImage(render, file);
-            graphics.put(entry.getKey(), render);
+    private static void printStats(ExportPipeline pipeline) {
+        System.out.format("Exported in %.1f ms, %.0f resources/s%n",
+                pipeline.getElapsedNanos() / 1e6, pipeline.getResourcesPerSecond());
+        for (ExportPipeline.Stage stage : ExportPipeline.Stage.values()) {
+            System.out.format("  %-8s %6d items %9.1f ms%n", stage,
+                    pipeline.getStageCount(stage), pipeline.getStageNanos(stage) / 1e6);
         }
     }
 
-    private static void renderMap(File output, WadMap map) throws IOException {
+    private static void renderMap(File output, WadMap map, Map<String, BufferedImage> graphics) throws IOException {
         File file = new File(output, String.format("%s.png", map.name));
         FileUtil.ensureParentExist(file);
         try (MapRenderer mapRenderer = new MapRenderer(map)) {
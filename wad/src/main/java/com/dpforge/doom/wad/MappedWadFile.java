@@ -0,0 +1,230 @@
+package com.dpforge.doom.wad;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lazy alternative to {@link WadFileReader}. The file is memory-mapped and only the directory is read up front,
+ * lumps are decoded on first access and kept in a bounded {@link LumpCache}.
+ */
+public class MappedWadFile {
+
+    private static final long DEFAULT_CACHE_SIZE = 32L * 1024 * 1024;
+    private static final int HEADER_SIZE = 12;
+    private static final int DIRECTORY_ENTRY_SIZE = 16;
+    private static final Set<String> MAP_LUMPS = Set.of(
+            "THINGS", "LINEDEFS", "SIDEDEFS", "VERTEXES", "SEGS",
+            "SSECTORS", "NODES", "SECTORS", "REJECT", "BLOCKMAP"
+    );
+
+    private final MappedByteBuffer data;
+    private final WadType type;
+    private final WadLump[] lumps;
+    // the last lump with a given name wins, like W_CheckNumForName does
+    private final Map<String, WadLump> lumpsByName;
+    private final LumpCache cache;
+
+    private MappedWadFile(MappedByteBuffer data, long cacheSize) throws WadException {
+        this.data = data;
+        this.cache = new LumpCache(cacheSize);
+
+        BinaryReader reader = new BinaryReader(data.slice(0, HEADER_SIZE));
+        String wadType = reader.readAsciiString(4);
+        try {
+            type = WadType.valueOf(wadType);
+        } catch (IllegalArgumentException e) {
+            throw new WadException("Unknown type of WAD file: " + wadType);
+        }
+        int lumpNumber = reader.readInt32();
+        int infoTableOffset = reader.readInt32();
+        if (infoTableOffset < 0 || (long) infoTableOffset + (long) lumpNumber * DIRECTORY_ENTRY_SIZE > data.capacity()) {
+            throw new WadException("Directory is outside of file");
+        }
+
+        lumps = new WadLump[lumpNumber];
+        lumpsByName = new HashMap<>(lumpNumber * 2);
+        reader = new BinaryReader(data.slice(infoTableOffset, lumpNumber * DIRECTORY_ENTRY_SIZE));
+        for (int i = 0; i < lumpNumber; i++) {
+            int lumpPosition = reader.readInt32();
+            int lumpSize = reader.readInt32();
+            String lumpName = reader.readNullPaddedAsciiString(8);
+            if (lumpPosition < 0 || lumpSize < 0 || (long) lumpPosition + lumpSize > data.capacity()) {
+                throw new WadException("Lump %s is outside of file", lumpName);
+            }
+            lumps[i] = new WadLump(this, i, lumpName, lumpPosition, lumpSize);
+            lumpsByName.put(lumpName, lumps[i]);
+        }
+    }
+
+    public static MappedWadFile open(File file) throws IOException, WadException {
+        return open(file, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param cacheSize limit of decoded data kept in memory, measured in bytes of the source lumps
+     */
+    public static MappedWadFile open(File file, long cacheSize) throws IOException, WadException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            return new MappedWadFile(data, cacheSize);
+        }
+    }
+
+    public WadType getType() {
+        return type;
+    }
+
+    public int getLumpCount() {
+        return lumps.length;
+    }
+
+    public WadLump getLump(int index) {
+        return lumps[index];
+    }
+
+    /**
+     * @return the last lump with the given name or null if there is none
+     */
+    public WadLump findLump(String name) {
+        return lumpsByName.get(name);
+    }
+
+    public WadLump getLump(String name) throws WadException {
+        WadLump lump = findLump(name);
+        if (lump == null) {
+            throw new WadException("Lump %s not found", name);
+        }
+        return lump;
+    }
+
+    public Graphic getPicture(String name) throws WadException {
+        return getLump(name).decode(LumpDecoder.PICTURE);
+    }
+
+    public byte[][] getFlat(String name) throws WadException {
+        return getLump(name).decode(LumpDecoder.FLAT);
+    }
+
+    public byte[] getSound(String name) throws WadException {
+        return getLump(name).decode(LumpDecoder.RAW);
+    }
+
+    public Color[][] getPalettes() throws WadException {
+        return getLump("PLAYPAL").decode(LumpDecoder.PLAYPAL);
+    }
+
+    public byte[][] getColorMaps() throws WadException {
+        return getLump("COLORMAP").decode(LumpDecoder.COLORMAP);
+    }
+
+    public String[] getPNames() throws WadException {
+        return getLump("PNAMES").decode(LumpDecoder.PNAMES);
+    }
+
+    public Map<String, Texture> getTextures() throws WadException {
+        Map<String, Texture> result = new LinkedHashMap<>();
+        for (String lumpName : new String[]{"TEXTURE1", "TEXTURE2"}) {
+            WadLump lump = findLump(lumpName);
+            if (lump == null) {
+                continue;
+            }
+            for (Texture texture : lump.decode(LumpDecoder.TEXTURES)) {
+                result.put(texture.name(), texture);
+            }
+        }
+        return result;
+    }
+
+    public List<String> getMapNames() {
+        List<String> result = new ArrayList<>();
+        for (WadLump lump : lumps) {
+            if (lump.size() == 0 && WadFileReader.isMapName(lump.name())) {
+                result.add(lump.name());
+            }
+        }
+        return result;
+    }
+
+    public WadMap getMap(String name) throws WadException {
+        WadLump marker = getLump(name);
+        WadMap cached = (WadMap) cache.getMap(marker.index(), LumpCache.MapForm.RECORDS);
+        if (cached != null) {
+            return cached;
+        }
+
+        WadMap map = new WadMap(name);
+        long weight = 0;
+        for (int i = marker.index() + 1; i < lumps.length && MAP_LUMPS.contains(lumps[i].name()); i++) {
+            WadLump lump = lumps[i];
+            BinaryReader reader = new BinaryReader(lump.data());
+            switch (lump.name()) {
+                case "THINGS" -> map.things = LumpDecoder.readThings(reader, lump.size());
+                case "LINEDEFS" -> map.lineDefs = LumpDecoder.readLineDefs(reader, lump.size());
+                case "SIDEDEFS" -> map.sideDefs = LumpDecoder.readSideDefs(reader, lump.size());
+                case "VERTEXES" -> map.vertexes = LumpDecoder.readVertexes(reader, lump.size());
+                case "SEGS" -> map.segs = LumpDecoder.readSegs(reader, lump.size());
+                case "SSECTORS" -> map.ssectors = LumpDecoder.readSSectors(reader, lump.size());
+                case "NODES" -> map.nodes = LumpDecoder.readNodes(reader, lump.size());
+                case "SECTORS" -> map.sectors = LumpDecoder.readSectors(reader, lump.size());
+                default -> {
+                    // REJECT and BLOCKMAP are not used
+                }
+            }
+            weight += lump.size();
+        }
+        cache.putMap(marker.index(), LumpCache.MapForm.RECORDS, map, weight);
+        return map;
+    }
+
+    /**
+     * The map with an array per field, read from the lump bytes without decoding records first.
+     */
+    public PackedMap getPackedMap(String name) throws WadException {
+        WadLump marker = getLump(name);
+        PackedMap cached = (PackedMap) cache.getMap(marker.index(), LumpCache.MapForm.PACKED);
+        if (cached != null) {
+            return cached;
+        }
+        PackedMap map = PackedMap.read(this, marker);
+        long weight = 0;
+        for (int i = marker.index() + 1; i < lumps.length && MAP_LUMPS.contains(lumps[i].name()); i++) {
+            weight += lumps[i].size();
+        }
+        cache.putMap(marker.index(), LumpCache.MapForm.PACKED, map, weight);
+        return map;
+    }
+
+    public long getCacheHits() {
+        return cache.hits();
+    }
+
+    public long getCacheMisses() {
+        return cache.misses();
+    }
+
+    MappedByteBuffer data() {
+        return data;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T decode(WadLump lump, LumpReader<T> reader) throws WadException {
+        T value = (T) cache.get(lump.index(), reader);
+        if (value == null) {
+            value = reader.read(new BinaryReader(lump.data()), lump.size());
+            cache.put(lump.index(), reader, value, lump.size());
+        }
+        return value;
+    }
+}
@@ -0,0 +1,348 @@
+package com.dpforge.doom.wad;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Map geometry with an array per field instead of an array of records, e.g. {@link #nodeX} instead of
+ * {@link Node#partitionLineX()}. The BSP walk and the wall code read a few fields of many nodes and segs, which
+ * are next to each other here rather than spread over objects and the {@link BBox} objects they point to.
+ * <p>
+ * It is filled straight from the lump bytes by {@link MappedWadFile#getPackedMap} or converted from a {@link WadMap}.
+ * Fields hold the same values {@link LumpDecoder} gives the records.
+ */
+public class PackedMap {
+
+    // ints per node in nodeBBox: top, bottom, left and right of the right box, then of the left box
+    public static final int BBOX_FIELDS = 8;
+    public static final int LEFT_BBOX = 4;
+    // nodeBBox fields of a box relative to its start, the same as the BOXTOP to BOXRIGHT indexes of DOOM
+    public static final int BOX_TOP = 0;
+    public static final int BOX_BOTTOM = 1;
+    public static final int BOX_LEFT = 2;
+    public static final int BOX_RIGHT = 3;
+    // flag of node children that are subsectors, the rest of the number is the subsector
+    public static final int NF_SUBSECTOR = 1 << 15;
+
+    private static final int LINEDEF_SIZE = 14;
+    private static final int SIDEDEF_SIZE = 30;
+    private static final int VERTEX_SIZE = 4;
+    private static final int SEG_SIZE = 12;
+    private static final int SSECTOR_SIZE = 4;
+    private static final int NODE_SIZE = 28;
+    private static final int SECTOR_SIZE = 26;
+
+    public final String name;
+    public final Thing[] things;
+
+    public final int[] vertexX;
+    public final int[] vertexY;
+
+    public final int[] lineStart;
+    public final int[] lineEnd;
+    public final int[] lineFlags;
+    public final int[] lineSpecial;
+    public final int[] lineTag;
+    public final int[] lineRightSide;
+    public final int[] lineLeftSide;
+
+    public final int[] sideXOffset;
+    public final int[] sideYOffset;
+    public final String[] sideUpper;
+    public final String[] sideLower;
+    public final String[] sideMiddle;
+    public final int[] sideSector;
+
+    public final int[] segStart;
+    public final int[] segEnd;
+    public final int[] segAngle;
+    public final int[] segLine;
+    // ordinal of Seg.Direction, 0 if the seg runs along the front side of its linedef
+    public final int[] segDirection;
+    public final int[] segOffset;
+
+    public final int[] ssectorSegCount;
+    public final int[] ssectorFirstSeg;
+    // sector the subsector is in, which is the sector its first seg faces
+    public final int[] ssectorSector;
+
+    public final int[] nodeX;
+    public final int[] nodeY;
+    public final int[] nodeDX;
+    public final int[] nodeDY;
+    public final int[] nodeBBox;
+    public final int[] nodeRightChild;
+    public final int[] nodeLeftChild;
+
+    public final int[] sectorFloor;
+    public final int[] sectorCeiling;
+    public final String[] sectorFloorTexture;
+    public final String[] sectorCeilingTexture;
+    public final int[] sectorLight;
+    public final int[] sectorType;
+    public final int[] sectorTag;
+
+    private PackedMap(String name, Thing[] things, int vertexes, int lineDefs, int sideDefs, int segs,
+                      int ssectors, int nodes, int sectors) {
+        this.name = name;
+        this.things = things;
+        vertexX = new int[vertexes];
+        vertexY = new int[vertexes];
+        lineStart = new int[lineDefs];
+        lineEnd = new int[lineDefs];
+        lineFlags = new int[lineDefs];
+        lineSpecial = new int[lineDefs];
+        lineTag = new int[lineDefs];
+        lineRightSide = new int[lineDefs];
+        lineLeftSide = new int[lineDefs];
+        sideXOffset = new int[sideDefs];
+        sideYOffset = new int[sideDefs];
+        sideUpper = new String[sideDefs];
+        sideLower = new String[sideDefs];
+        sideMiddle = new String[sideDefs];
+        sideSector = new int[sideDefs];
+        segStart = new int[segs];
+        segEnd = new int[segs];
+        segAngle = new int[segs];
+        segLine = new int[segs];
+        segDirection = new int[segs];
+        segOffset = new int[segs];
+        ssectorSegCount = new int[ssectors];
+        ssectorFirstSeg = new int[ssectors];
+        ssectorSector = new int[ssectors];
+        nodeX = new int[nodes];
+        nodeY = new int[nodes];
+        nodeDX = new int[nodes];
+        nodeDY = new int[nodes];
+        nodeBBox = new int[nodes * BBOX_FIELDS];
+        nodeRightChild = new int[nodes];
+        nodeLeftChild = new int[nodes];
+        sectorFloor = new int[sectors];
+        sectorCeiling = new int[sectors];
+        sectorFloorTexture = new String[sectors];
+        sectorCeilingTexture = new String[sectors];
+        sectorLight = new int[sectors];
+        sectorType = new int[sectors];
+        sectorTag = new int[sectors];
+    }
+
+    public static PackedMap of(WadMap map) {
+        PackedMap result = new PackedMap(map.name, map.things, map.vertexes.length, map.lineDefs.length,
+                map.sideDefs.length, map.segs.length, map.ssectors.length, map.nodes.length, map.sectors.length);
+        for (int i = 0; i < map.vertexes.length; i++) {
+            result.vertexX[i] = map.vertexes[i].x();
+            result.vertexY[i] = map.vertexes[i].y();
+        }
+        for (int i = 0; i < map.lineDefs.length; i++) {
+            LineDef line = map.lineDefs[i];
+            result.lineStart[i] = line.startVertex();
+            result.lineEnd[i] = line.endVertex();
+            result.lineFlags[i] = line.flags();
+            result.lineSpecial[i] = line.specialType();
+            result.lineTag[i] = line.sectorTag();
+            result.lineRightSide[i] = line.rightSideDef();
+            result.lineLeftSide[i] = line.leftSideDef();
+        }
+        for (int i = 0; i < map.sideDefs.length; i++) {
+            SideDef side = map.sideDefs[i];
+            result.sideXOffset[i] = side.xOffset();
+            result.sideYOffset[i] = side.yOffset();
+            result.sideUpper[i] = side.upperTexture();
+            result.sideLower[i] = side.lowerTexture();
+            result.sideMiddle[i] = side.middleTexture();
+            result.sideSector[i] = side.facingSectorNumber();
+        }
+        for (int i = 0; i < map.segs.length; i++) {
+            Seg seg = map.segs[i];
+            result.segStart[i] = seg.startVertex();
+            result.segEnd[i] = seg.endVertex();
+            result.segAngle[i] = seg.angle();
+            result.segLine[i] = seg.lineDef();
+            result.segDirection[i] = seg.direction().ordinal();
+            result.segOffset[i] = seg.offset();
+        }
+        for (int i = 0; i < map.ssectors.length; i++) {
+            result.ssectorSegCount[i] = map.ssectors[i].segCount();
+            result.ssectorFirstSeg[i] = map.ssectors[i].firstSeg();
+        }
+        for (int i = 0; i < map.nodes.length; i++) {
+            Node node = map.nodes[i];
+            result.nodeX[i] = node.partitionLineX();
+            result.nodeY[i] = node.partitionLineY();
+            result.nodeDX[i] = node.partitionLineDX();
+            result.nodeDY[i] = node.partitionLineDY();
+            int box = i * BBOX_FIELDS;
+            putBBox(result.nodeBBox, box, node.rightBBox());
+            putBBox(result.nodeBBox, box + LEFT_BBOX, node.leftBBox());
+            result.nodeRightChild[i] = node.rightChild();
+            result.nodeLeftChild[i] = node.leftChild();
+        }
+        for (int i = 0; i < map.sectors.length; i++) {
+            Sector sector = map.sectors[i];
+            result.sectorFloor[i] = sector.floorHeight();
+            result.sectorCeiling[i] = sector.ceilingHeight();
+            result.sectorFloorTexture[i] = sector.floorTexture();
+            result.sectorCeilingTexture[i] = sector.ceilingTexture();
+            result.sectorLight[i] = sector.lightLevel();
+            result.sectorType[i] = sector.type();
+            result.sectorTag[i] = sector.tag();
+        }
+        result.findSubSectorSectors();
+        return result;
+    }
+
+    private static void putBBox(int[] boxes, int offset, BBox bbox) {
+        boxes[offset + BOX_TOP] = bbox.top();
+        boxes[offset + BOX_BOTTOM] = bbox.bottom();
+        boxes[offset + BOX_LEFT] = bbox.left();
+        boxes[offset + BOX_RIGHT] = bbox.right();
+    }
+
+    /**
+     * Reads the map from the lumps that follow its marker, each field is taken from the lump bytes
+     * without creating records.
+     */
+    static PackedMap read(MappedWadFile wad, WadLump marker) throws WadException {
+        WadLump things = null;
+        WadLump lineDefs = null;
+        WadLump sideDefs = null;
+        WadLump vertexes = null;
+        WadLump segs = null;
+        WadLump ssectors = null;
+        WadLump nodes = null;
+        WadLump sectors = null;
+        lumps:
+        for (int i = marker.index() + 1; i < wad.getLumpCount(); i++) {
+            WadLump lump = wad.getLump(i);
+            switch (lump.name()) {
+                case "THINGS" -> things = lump;
+                case "LINEDEFS" -> lineDefs = lump;
+                case "SIDEDEFS" -> sideDefs = lump;
+                case "VERTEXES" -> vertexes = lump;
+                case "SEGS" -> segs = lump;
+                case "SSECTORS" -> ssectors = lump;
+                case "NODES" -> nodes = lump;
+                case "SECTORS" -> sectors = lump;
+                case "REJECT", "BLOCKMAP" -> {
+                    // not used
+                }
+                default -> {
+                    break lumps;
+                }
+            }
+        }
+        if (things == null || lineDefs == null || sideDefs == null || vertexes == null || segs == null
+                || ssectors == null || nodes == null || sectors == null) {
+            throw new WadException("Map %s misses lumps", marker.name());
+        }
+
+        PackedMap map = new PackedMap(marker.name(),
+                LumpDecoder.readThings(new BinaryReader(things.data()), things.size()),
+                vertexes.size() / VERTEX_SIZE, lineDefs.size() / LINEDEF_SIZE, sideDefs.size() / SIDEDEF_SIZE,
+                segs.size() / SEG_SIZE, ssectors.size() / SSECTOR_SIZE, nodes.size() / NODE_SIZE,
+                sectors.size() / SECTOR_SIZE);
+
+        ByteBuffer data = vertexes.data();
+        for (int i = 0, p = 0; i < map.vertexX.length; i++, p += VERTEX_SIZE) {
+            map.vertexX[i] = data.getShort(p);
+            map.vertexY[i] = data.getShort(p + 2);
+        }
+        data = lineDefs.data();
+        for (int i = 0, p = 0; i < map.lineStart.length; i++, p += LINEDEF_SIZE) {
+            map.lineStart[i] = unsigned(data, p);
+            map.lineEnd[i] = unsigned(data, p + 2);
+            map.lineFlags[i] = unsigned(data, p + 4);
+            map.lineSpecial[i] = unsigned(data, p + 6);
+            map.lineTag[i] = unsigned(data, p + 8);
+            map.lineRightSide[i] = unsigned(data, p + 10);
+            map.lineLeftSide[i] = unsigned(data, p + 12);
+        }
+        data = sideDefs.data();
+        for (int i = 0, p = 0; i < map.sideSector.length; i++, p += SIDEDEF_SIZE) {
+            map.sideXOffset[i] = data.getShort(p);
+            map.sideYOffset[i] = data.getShort(p + 2);
+            map.sideUpper[i] = name(data, p + 4);
+            map.sideLower[i] = name(data, p + 12);
+            map.sideMiddle[i] = name(data, p + 20);
+            map.sideSector[i] = unsigned(data, p + 28);
+        }
+        data = segs.data();
+        for (int i = 0, p = 0; i < map.segStart.length; i++, p += SEG_SIZE) {
+            map.segStart[i] = unsigned(data, p);
+            map.segEnd[i] = unsigned(data, p + 2);
+            map.segAngle[i] = unsigned(data, p + 4);
+            map.segLine[i] = unsigned(data, p + 6);
+            map.segDirection[i] = unsigned(data, p + 8);
+            map.segOffset[i] = unsigned(data, p + 10);
+            if (map.segDirection[i] > 1) {
+                throw new WadException("Wrong direction of seg %d", i);
+            }
+        }
+        data = ssectors.data();
+        for (int i = 0, p = 0; i < map.ssectorFirstSeg.length; i++, p += SSECTOR_SIZE) {
+            map.ssectorSegCount[i] = unsigned(data, p);
+            map.ssectorFirstSeg[i] = unsigned(data, p + 2);
+        }
+        data = nodes.data();
+        for (int i = 0, p = 0; i < map.nodeX.length; i++, p += NODE_SIZE) {
+            map.nodeX[i] = data.getShort(p);
+            map.nodeY[i] = data.getShort(p + 2);
+            map.nodeDX[i] = data.getShort(p + 4);
+            map.nodeDY[i] = data.getShort(p + 6);
+            // both boxes are stored top, bottom, left, right like nodeBBox
+            for (int j = 0; j < BBOX_FIELDS; j++) {
+                map.nodeBBox[i * BBOX_FIELDS + j] = data.getShort(p + 8 + 2 * j);
+            }
+            map.nodeRightChild[i] = unsigned(data, p + 24);
+            map.nodeLeftChild[i] = unsigned(data, p + 26);
+        }
+        data = sectors.data();
+        for (int i = 0, p = 0; i < map.sectorFloor.length; i++, p += SECTOR_SIZE) {
+            map.sectorFloor[i] = data.getShort(p);
+            map.sectorCeiling[i] = data.getShort(p + 2);
+            map.sectorFloorTexture[i] = name(data, p + 4);
+            map.sectorCeilingTexture[i] = name(data, p + 12);
+            map.sectorLight[i] = unsigned(data, p + 20);
+            map.sectorType[i] = unsigned(data, p + 22);
+            map.sectorTag[i] = unsigned(data, p + 24);
+        }
+        map.findSubSectorSectors();
+        return map;
+    }
+
+    private static int unsigned(ByteBuffer data, int offset) {
+        return data.getShort(offset) & 0xFFFF;
+    }
+
+    private static String name(ByteBuffer data, int offset) {
+        int length = 0;
+        while (length < 8 && data.get(offset + length) != 0) {
+            length++;
+        }
+        byte[] bytes = new byte[length];
+        data.get(offset, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    // the sector of a subsector is the one its first seg faces
+    private void findSubSectorSectors() {
+        for (int i = 0; i < ssectorSector.length; i++) {
+            int seg = ssectorFirstSeg[i];
+            int line = segLine[seg];
+            int side = segDirection[seg] == 0 ? lineRightSide[line] : lineLeftSide[line];
+            ssectorSector[i] = sideSector[side];
+        }
+    }
+
+    /**
+     * @return index of the sector the point is in, see R_PointInSubsector
+     */
+    public int sectorAt(int x, int y) {
+        int child = nodeX.length - 1;
+        while ((child & NF_SUBSECTOR) == 0) {
+            long side = (long) (x - nodeX[child]) * nodeDY[child] - (long) (y - nodeY[child]) * nodeDX[child];
+            child = side > 0 ? nodeRightChild[child] : nodeLeftChild[child];
+        }
+        return ssectorSector[child & ~NF_SUBSECTOR];
+    }
+}
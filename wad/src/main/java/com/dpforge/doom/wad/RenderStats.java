@@ -0,0 +1,156 @@
+package com.dpforge.doom.wad;
+
+/**
+ * Counters and phase timings of the last frame drawn by {@link GameRenderer}.
+ * The renderer updates the same object every frame, so reading it costs nothing and it should be read
+ * before the next frame starts.
+ */
+public class RenderStats {
+
+    int nodes;
+    int subSectors;
+    int segs;
+    int columns;
+    long wallPixels;
+    int planes;
+    int spans;
+    long spanPixels;
+    int sprites;
+
+    long frameNanos;
+    long bspNanos;
+    long wallNanos;
+    long planeNanos;
+    long spriteNanos;
+    long presentNanos;
+
+    void reset() {
+        nodes = 0;
+        subSectors = 0;
+        segs = 0;
+        columns = 0;
+        wallPixels = 0;
+        planes = 0;
+        spans = 0;
+        spanPixels = 0;
+        sprites = 0;
+        frameNanos = 0;
+        bspNanos = 0;
+        wallNanos = 0;
+        planeNanos = 0;
+        spriteNanos = 0;
+        presentNanos = 0;
+    }
+
+    /**
+     * BSP nodes visited by the walk.
+     */
+    public int getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Subsectors reached by the BSP walk.
+     */
+    public int getSubSectors() {
+        return subSectors;
+    }
+
+    /**
+     * Visible parts of walls passed on for drawing, a seg split by nearer walls counts once per part.
+     */
+    public int getSegs() {
+        return segs;
+    }
+
+    /**
+     * Wall columns drawn, a column of a wall with an upper and a lower part counts twice.
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Wall pixels written, including pixels painted more than once.
+     */
+    public long getWallPixels() {
+        return wallPixels;
+    }
+
+    /**
+     * Floor and ceiling planes drawn.
+     */
+    public int getPlanes() {
+        return planes;
+    }
+
+    /**
+     * Horizontal runs of floor and ceiling pixels drawn.
+     */
+    public int getSpans() {
+        return spans;
+    }
+
+    public long getSpanPixels() {
+        return spanPixels;
+    }
+
+    /**
+     * Time taken by the whole frame.
+     */
+    public long getFrameNanos() {
+        return frameNanos;
+    }
+
+    /**
+     * Time taken by the BSP walk, which includes the walls.
+     */
+    public long getBspNanos() {
+        return bspNanos;
+    }
+
+    /**
+     * Time taken to clip and draw the walls, or to record them when several threads draw the frame.
+     */
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * Time taken to turn the planes into spans and draw them, or to record the spans when several threads
+     * draw the frame.
+     */
+    public long getPlaneNanos() {
+        return planeNanos;
+    }
+
+    /**
+     * Time taken to sort the sprites and draw them, when several threads draw the frame
+     * the drawing is a part of {@link #getPresentNanos()}.
+     */
+    public long getSpriteNanos() {
+        return spriteNanos;
+    }
+
+    /**
+     * Time taken to turn the frame into colors of the image,
+     * when several threads draw the frame it includes all the drawing they do.
+     */
+    public long getPresentNanos() {
+        return presentNanos;
+    }
+
+    /**
+     * Things found in front of the camera and passed on for drawing.
+     */
+    public int getSprites() {
+        return sprites;
+    }
+
+    /**
+     * Floor and ceiling pixels drawn per second.
+     */
+    public double getSpanPixelsPerSecond() {
+        return planeNanos == 0 ? 0 : spanPixels * 1e9 / planeNanos;
+    }
+}
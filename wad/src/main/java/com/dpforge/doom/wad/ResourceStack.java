@@ -0,0 +1,220 @@
+package com.dpforge.doom.wad;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+/**
+ * An IWAD with PWADs stacked on top of it. A lump of a later file replaces a lump with the same name of an earlier
+ * one, like W_CheckNumForName finds the last lump with a name.
+ * <p>
+ * Names are resolved through hashed indexes built once when the stack is opened, so a lookup takes the same time
+ * however many files are stacked. Besides the index of all lumps there is one per namespace, so a sprite and a flat
+ * with the same name don't replace each other.
+ */
+public class ResourceStack {
+
+    /**
+     * Lumps between {@code S_START} and {@code S_END} markers and the like. PWADs use doubled letters,
+     * e.g. {@code SS_START}, and the IWAD nests numbered ones, e.g. {@code P1_START}, all of them count.
+     */
+    public enum Namespace {
+        SPRITES, FLATS, PATCHES
+    }
+
+    private final List<MappedWadFile> wads;
+    private final Map<String, WadLump> lumps = new HashMap<>();
+    private final Map<Namespace, Map<String, WadLump>> namespaces = new EnumMap<>(Namespace.class);
+
+    /**
+     * @param wads the IWAD first, then the PWADs in the order they are stacked
+     */
+    public ResourceStack(List<MappedWadFile> wads) {
+        if (wads.isEmpty()) {
+            throw new IllegalArgumentException("No WAD files");
+        }
+        this.wads = List.copyOf(wads);
+        for (Namespace namespace : Namespace.values()) {
+            namespaces.put(namespace, new HashMap<>());
+        }
+        for (MappedWadFile wad : this.wads) {
+            index(wad);
+        }
+    }
+
+    public static ResourceStack open(File iwad, File... pwads) throws IOException, WadException {
+        List<MappedWadFile> wads = new ArrayList<>();
+        wads.add(MappedWadFile.open(iwad));
+        for (File pwad : pwads) {
+            wads.add(MappedWadFile.open(pwad));
+        }
+        return new ResourceStack(wads);
+    }
+
+    private void index(MappedWadFile wad) {
+        // namespaces of the open markers, null for a marker of an unknown namespace
+        Stack<Namespace> markers = new Stack<>();
+        for (int i = 0; i < wad.getLumpCount(); i++) {
+            WadLump lump = wad.getLump(i);
+            String name = lump.name();
+            if (lump.size() == 0 && name.endsWith("_START")) {
+                Namespace namespace = namespaceOf(name.substring(0, name.length() - "_START".length()));
+                // lumps between unknown markers inside a namespace still belong to it
+                markers.push(namespace == null && !markers.isEmpty() ? markers.peek() : namespace);
+                continue;
+            } else if (lump.size() == 0 && name.endsWith("_END")) {
+                // a marker without a start is ignored, some PWADs only have F_END to extend the IWAD flats
+                if (!markers.isEmpty()) {
+                    markers.pop();
+                }
+                continue;
+            }
+            lumps.put(name, lump);
+            Namespace namespace = markers.isEmpty() ? null : markers.peek();
+            if (namespace != null) {
+                namespaces.get(namespace).put(name, lump);
+            }
+        }
+    }
+
+    private static Namespace namespaceOf(String marker) {
+        return switch (marker) {
+            case "S", "SS" -> Namespace.SPRITES;
+            case "F", "FF", "F1", "F2", "F3" -> Namespace.FLATS;
+            case "P", "PP", "P1", "P2", "P3" -> Namespace.PATCHES;
+            default -> null;
+        };
+    }
+
+    public List<MappedWadFile> getWads() {
+        return wads;
+    }
+
+    /**
+     * @return the lump of the last file with the given name or null if there is none
+     */
+    public WadLump findLump(String name) {
+        return lumps.get(name);
+    }
+
+    /**
+     * @return the lump of the last file with the given name in the namespace or null if there is none
+     */
+    public WadLump findLump(Namespace namespace, String name) {
+        return namespaces.get(namespace).get(name);
+    }
+
+    public WadLump getLump(String name) throws WadException {
+        WadLump lump = findLump(name);
+        if (lump == null) {
+            throw new WadException("Lump %s not found", name);
+        }
+        return lump;
+    }
+
+    /**
+     * Names of the lumps in the namespace, each once.
+     */
+    public Set<String> getNames(Namespace namespace) {
+        return Collections.unmodifiableSet(namespaces.get(namespace).keySet());
+    }
+
+    public Graphic getSprite(String name) throws WadException {
+        return getLump(Namespace.SPRITES, name).decode(LumpDecoder.PICTURE);
+    }
+
+    public byte[][] getFlat(String name) throws WadException {
+        return getLump(Namespace.FLATS, name).decode(LumpDecoder.FLAT);
+    }
+
+    /**
+     * Finds a patch in the patch namespace first, then among all lumps like R_InitTextures does,
+     * since PWADs often add patches without markers.
+     *
+     * @return the patch or null if there is none
+     */
+    public Graphic findPatch(String name) throws WadException {
+        WadLump lump = findLump(Namespace.PATCHES, name);
+        if (lump == null) {
+            lump = findLump(name);
+        }
+        return lump != null ? lump.decode(LumpDecoder.PICTURE) : null;
+    }
+
+    private WadLump getLump(Namespace namespace, String name) throws WadException {
+        WadLump lump = findLump(namespace, name);
+        if (lump == null) {
+            throw new WadException("Lump %s not found in %s", name, namespace);
+        }
+        return lump;
+    }
+
+    public byte[] getSound(String name) throws WadException {
+        return getLump(name).decode(LumpDecoder.RAW);
+    }
+
+    public Color[][] getPalettes() throws WadException {
+        return getLump("PLAYPAL").decode(LumpDecoder.PLAYPAL);
+    }
+
+    public byte[][] getColorMaps() throws WadException {
+        return getLump("COLORMAP").decode(LumpDecoder.COLORMAP);
+    }
+
+    public String[] getPNames() throws WadException {
+        return getLump("PNAMES").decode(LumpDecoder.PNAMES);
+    }
+
+    /**
+     * Textures of the last TEXTURE1 and TEXTURE2 lumps, a PWAD with its own TEXTURE1 replaces all
+     * the textures of that lump.
+     */
+    public Map<String, Texture> getTextures() throws WadException {
+        Map<String, Texture> result = new LinkedHashMap<>();
+        for (String lumpName : new String[]{"TEXTURE1", "TEXTURE2"}) {
+            WadLump lump = findLump(lumpName);
+            if (lump == null) {
+                continue;
+            }
+            for (Texture texture : lump.decode(LumpDecoder.TEXTURES)) {
+                result.put(texture.name(), texture);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Names of the maps of all files, a map replaced by a later file is listed once.
+     */
+    public List<String> getMapNames() {
+        Set<String> result = new LinkedHashSet<>();
+        for (MappedWadFile wad : wads) {
+            result.addAll(wad.getMapNames());
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * The map from the last file that has it.
+     */
+    public WadMap getMap(String name) throws WadException {
+        return getLump(name).wad().getMap(name);
+    }
+
+    /**
+     * The map from the last file that has it, with an array per field.
+     */
+    public PackedMap getPackedMap(String name) throws WadException {
+        return getLump(name).wad().getPackedMap(name);
+    }
+}
@@ -0,0 +1,153 @@
+package com.dpforge.doom.wad;
+
+/**
+ * Sorted list of screen column ranges already covered by solid walls, see solidsegs in r_bsp.c.
+ * <p>
+ * The list always starts and ends with a sentinel range outside the screen, so lookups never run past its ends.
+ */
+class SolidSegs {
+
+    /**
+     * Receives the parts of a wall that are not hidden behind solid walls.
+     */
+    @FunctionalInterface
+    interface Visitor {
+        void visit(int first, int last);
+    }
+
+    private final int width;
+    // disjoint ranges sorted by column, there can't be more than one per two columns plus the sentinels
+    private final int[] first;
+    private final int[] last;
+    private int count;
+
+    SolidSegs(int width) {
+        this.width = width;
+        this.first = new int[width / 2 + 3];
+        this.last = new int[width / 2 + 3];
+        clear();
+    }
+
+    void clear() {
+        first[0] = Integer.MIN_VALUE;
+        last[0] = -1;
+        first[1] = width;
+        last[1] = Integer.MAX_VALUE;
+        count = 2;
+    }
+
+    /**
+     * Checks whether all columns from {@code x1} to {@code x2} inclusive are already covered.
+     */
+    boolean isOccluded(int x1, int x2) {
+        int i = 0;
+        while (last[i] < x2) {
+            i++;
+        }
+        return x1 >= first[i] && x2 <= last[i];
+    }
+
+    boolean isFull() {
+        return count == 1;
+    }
+
+    /**
+     * Passes the visible parts of a solid wall covering columns {@code x1} to {@code x2} to the visitor
+     * and marks the columns as covered, see R_ClipSolidWallSegment.
+     */
+    void clipSolid(int x1, int x2, Visitor visitor) {
+        // find the first range that touches the range (adjacent pixels are touching)
+        int start = 0;
+        while (last[start] < x1 - 1) {
+            start++;
+        }
+
+        if (x1 < first[start]) {
+            if (x2 < first[start] - 1) {
+                // the post is entirely visible (before start), so insert a new clippost
+                visitor.visit(x1, x2);
+                System.arraycopy(first, start, first, start + 1, count - start);
+                System.arraycopy(last, start, last, start + 1, count - start);
+                first[start] = x1;
+                last[start] = x2;
+                count++;
+                return;
+            }
+            // there is a fragment before start
+            visitor.visit(x1, first[start] - 1);
+            // adjust the clip size
+            first[start] = x1;
+        }
+
+        // the end is contained in start
+        if (x2 <= last[start]) {
+            return;
+        }
+
+        int next = start;
+        while (x2 >= first[next + 1] - 1) {
+            // there is a fragment between two posts
+            visitor.visit(last[next] + 1, first[next + 1] - 1);
+            next++;
+            if (x2 <= last[next]) {
+                // the end is contained in next, adjust the clip size
+                last[start] = last[next];
+                crunch(start, next);
+                return;
+            }
+        }
+
+        // there is a fragment after next
+        visitor.visit(last[next] + 1, x2);
+        // adjust the clip size
+        last[start] = x2;
+        crunch(start, next);
+    }
+
+    /**
+     * Passes the visible parts of a see-through wall to the visitor without marking them, see R_ClipPassWallSegment.
+     */
+    void clipPass(int x1, int x2, Visitor visitor) {
+        int start = 0;
+        while (last[start] < x1 - 1) {
+            start++;
+        }
+
+        if (x1 < first[start]) {
+            if (x2 < first[start] - 1) {
+                // the post is entirely visible (before start)
+                visitor.visit(x1, x2);
+                return;
+            }
+            // there is a fragment before start
+            visitor.visit(x1, first[start] - 1);
+        }
+
+        // the end is contained in start
+        if (x2 <= last[start]) {
+            return;
+        }
+
+        while (x2 >= first[start + 1] - 1) {
+            // there is a fragment between two posts
+            visitor.visit(last[start] + 1, first[start + 1] - 1);
+            start++;
+            if (x2 <= last[start]) {
+                return;
+            }
+        }
+
+        // there is a fragment after start
+        visitor.visit(last[start] + 1, x2);
+    }
+
+    // remove the ranges from start + 1 to next inclusive, they have been merged into start
+    private void crunch(int start, int next) {
+        if (next == start) {
+            return;
+        }
+        System.arraycopy(first, next + 1, first, start + 1, count - next - 1);
+        System.arraycopy(last, next + 1, last, start + 1, count - next - 1);
+        count -= next - start;
+    }
+}
@@ -0,0 +1,108 @@
+package com.dpforge.doom.wad;
+
+import static com.dpforge.doom.wad.FixedPoint.FRACUNIT;
+
+/**
+ * Lookup tables of binary angles (BAM), generated the same way as tables.c.
+ * <p>
+ * A BAM angle maps the full circle onto the whole range of int: 0x40000000 is 90°, 0x80000000 is 180° and so on,
+ * so angles wrap around for free on overflow.
+ */
+final class Tables {
+
+    static final int FINEANGLES = 8192;
+    static final int FINEMASK = FINEANGLES - 1;
+    // BAM to fine angle index
+    static final int ANGLETOFINESHIFT = 19;
+
+    static final int ANG45 = 0x20000000;
+    static final int ANG90 = 0x40000000;
+    static final int ANG180 = 0x80000000;
+    static final int ANG270 = 0xC0000000;
+
+    static final int SLOPERANGE = 2048;
+
+    /**
+     * Sine of fine angles. Has 5/4 of a circle so cosine can be read from the same table with an offset.
+     */
+    static final int[] fineSine = new int[5 * FINEANGLES / 4];
+    /**
+     * Tangent of fine angles from -90° to 90°.
+     */
+    static final int[] fineTangent = new int[FINEANGLES / 2];
+    /**
+     * BAM angle of atan(i / SLOPERANGE), for slopes from 0 to 1.
+     */
+    static final int[] tanToAngle = new int[SLOPERANGE + 1];
+
+    static {
+        for (int i = 0; i < fineSine.length; i++) {
+            double angle = (i + 0.5) * 2 * Math.PI / FINEANGLES;
+            fineSine[i] = (int) (Math.sin(angle) * FRACUNIT);
+        }
+        for (int i = 0; i < fineTangent.length; i++) {
+            double angle = (i - FINEANGLES / 4 + 0.5) * 2 * Math.PI / FINEANGLES;
+            fineTangent[i] = (int) (Math.tan(angle) * FRACUNIT);
+        }
+        for (int i = 0; i <= SLOPERANGE; i++) {
+            double angle = Math.atan((double) i / SLOPERANGE);
+            tanToAngle[i] = (int) (long) (angle / (2 * Math.PI) * 0x100000000L);
+        }
+    }
+
+    private Tables() {
+    }
+
+    static int fineSine(int angle) {
+        return fineSine[angle >>> ANGLETOFINESHIFT];
+    }
+
+    static int fineCosine(int angle) {
+        return fineSine[(angle >>> ANGLETOFINESHIFT) + FINEANGLES / 4];
+    }
+
+    static int toAngle(float degrees) {
+        return (int) (long) ((double) degrees / 360 * 0x100000000L);
+    }
+
+    /**
+     * BAM angle of the vector {@code (x, y)}, see R_PointToAngle.
+     */
+    static int pointToAngle(int x, int y) {
+        if (x == 0 && y == 0) {
+            return 0;
+        }
+        if (x >= 0) {
+            if (y >= 0) {
+                return x > y
+                        ? tanToAngle[slopeDiv(y, x)]
+                        : ANG90 - 1 - tanToAngle[slopeDiv(x, y)];
+            }
+            y = -y;
+            return x > y
+                    ? -tanToAngle[slopeDiv(y, x)]
+                    : ANG270 + tanToAngle[slopeDiv(x, y)];
+        }
+        x = -x;
+        if (y >= 0) {
+            return x > y
+                    ? ANG180 - 1 - tanToAngle[slopeDiv(y, x)]
+                    : ANG90 + tanToAngle[slopeDiv(x, y)];
+        }
+        y = -y;
+        return x > y
+                ? ANG180 + tanToAngle[slopeDiv(y, x)]
+                : ANG270 - 1 - tanToAngle[slopeDiv(x, y)];
+    }
+
+    /**
+     * Index into {@link #tanToAngle} for a slope {@code num / den}, both non-negative and {@code num <= den}.
+     * Unlike the original it divides in long, so map units can be passed without overflow.
+     */
+    static int slopeDiv(int num, int den) {
+        if (den == 0) {
+            return SLOPERANGE;
+        }
+        return (int) Math.min((long) num * SLOPERANGE / den, SLOPERANGE);
+    }
+}
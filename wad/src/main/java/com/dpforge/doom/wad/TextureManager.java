@@ -0,0 +1,235 @@
+package com.dpforge.doom.wad;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Composes wall textures from their patches on first use and keeps them in a least recently used cache,
+ * bounded by the bytes the composition takes.
+ * <p>
+ * Like R_GenerateLookup does, columns covered by a single patch share the pixels of the patch and cost nothing,
+ * only columns where patches overlap or leave holes are copied into a new buffer.
+ */
+public class TextureManager {
+
+    private static final long DEFAULT_CACHE_SIZE = 8L * 1024 * 1024;
+
+    private final Map<String, Texture> textures = new HashMap<>();
+    // patch names upper cased once, by patch number
+    private final String[] pnames;
+    private final PatchSource patches;
+    // composed textures read from the cache instead, null if they are composed here
+    private final AssetCache assets;
+
+    private final long maxWeight;
+    private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private long weight;
+
+    private long hits;
+    private long misses;
+
+    public TextureManager(WadFile wad) {
+        this(wad.textures, wad.pnames, collectPatches(wad.directory, new HashMap<>())::get, DEFAULT_CACHE_SIZE);
+    }
+
+    public TextureManager(MappedWadFile wad) throws WadException {
+        this(wad.getTextures(), wad.getPNames(), name -> {
+            WadLump lump = wad.findLump(name);
+            return lump != null ? lump.decode(LumpDecoder.PICTURE) : null;
+        }, DEFAULT_CACHE_SIZE);
+    }
+
+    public TextureManager(ResourceStack resources) throws WadException {
+        this(resources.getTextures(), resources.getPNames(), resources::findPatch, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Takes the textures composed in the cache, nothing is composed when they are requested.
+     */
+    public TextureManager(AssetCache assets) {
+        this.pnames = new String[0];
+        this.patches = name -> null;
+        this.maxWeight = DEFAULT_CACHE_SIZE;
+        this.assets = assets;
+    }
+
+    /**
+     * @param patches   finds a patch by its upper case lump name, null if there is none
+     * @param cacheSize limit of composed columns kept in memory in bytes
+     */
+    TextureManager(Map<String, Texture> textures, String[] pnames, PatchSource patches, long cacheSize) {
+        textures.values().forEach(t -> this.textures.put(t.name().toUpperCase(Locale.ROOT), t));
+        this.pnames = new String[pnames.length];
+        for (int i = 0; i < pnames.length; i++) {
+            this.pnames[i] = pnames[i].toUpperCase(Locale.ROOT);
+        }
+        this.patches = patches;
+        this.maxWeight = cacheSize;
+        this.assets = null;
+    }
+
+    private static Map<String, Graphic> collectPatches(WadDirectory dir, Map<String, Graphic> patches) {
+        dir.graphics.forEach((name, graphic) -> patches.put(name.toUpperCase(Locale.ROOT), graphic));
+        for (WadDirectory child : dir.directories) {
+            collectPatches(child, patches);
+        }
+        return patches;
+    }
+
+    /**
+     * @return the texture with the given name, case insensitive, or null if there is none
+     */
+    public synchronized WallTexture get(String name) throws WadException {
+        String key = name.toUpperCase(Locale.ROOT);
+        Entry entry = cache.get(key);
+        if (entry != null) {
+            hits++;
+            return entry.texture;
+        }
+        if (assets != null) {
+            WallTexture texture = assets.getTexture(key);
+            if (texture == null) {
+                return null;
+            }
+            misses++;
+            // the columns share the pixels the cache copies once for all textures, they are not counted
+            put(key, new Entry(texture, 0));
+            return texture;
+        }
+        Texture texture = textures.get(key);
+        if (texture == null) {
+            return null;
+        }
+        misses++;
+        entry = compose(texture);
+        put(key, entry);
+        return entry.texture;
+    }
+
+    private void put(String key, Entry entry) {
+        cache.put(key, entry);
+        weight += entry.weight;
+        var iterator = cache.values().iterator();
+        // always keep the newest texture even if it alone is bigger than the limit
+        while (weight > maxWeight && cache.size() > 1) {
+            weight -= iterator.next().weight;
+            iterator.remove();
+        }
+    }
+
+    // see R_GenerateLookup and R_GenerateComposite
+    private Entry compose(Texture texture) throws WadException {
+        int width = texture.width();
+        int height = texture.height();
+        TexturePatch[] texturePatches = texture.patches();
+        Graphic[] graphics = new Graphic[texturePatches.length];
+        for (int i = 0; i < texturePatches.length; i++) {
+            int number = texturePatches[i].patchNumber();
+            if (number < 0 || number >= pnames.length) {
+                throw new WadException("Texture %s refers to missing patch %d", texture.name(), number);
+            }
+            graphics[i] = patches.find(pnames[number]);
+        }
+
+        byte[][] columns = new byte[width][];
+        int[] offsets = new int[width];
+        // patches covering each column and where the column is found in the last of them
+        int[] patchCount = new int[width];
+        Graphic[] singlePatch = new Graphic[width];
+        int[] singleOffset = new int[width];
+        for (int i = 0; i < texturePatches.length; i++) {
+            Graphic patch = graphics[i];
+            if (patch == null) {
+                continue;
+            }
+            TexturePatch p = texturePatches[i];
+            int x1 = Math.max(0, p.xOffset());
+            int x2 = Math.min(width, p.xOffset() + patch.width());
+            for (int x = x1; x < x2; x++) {
+                patchCount[x]++;
+                singlePatch[x] = patch;
+                singleOffset[x] = (x - p.xOffset()) * patch.height() - p.yOffset();
+                // the patch column must cover every row of the texture to be shared
+                if (p.yOffset() > 0 || height - p.yOffset() > patch.height()) {
+                    patchCount[x]++;
+                }
+            }
+        }
+
+        int composed = 0;
+        for (int x = 0; x < width; x++) {
+            if (patchCount[x] != 1) {
+                composed++;
+            }
+        }
+        byte[] composite = new byte[composed * height];
+        int next = 0;
+        for (int x = 0; x < width; x++) {
+            if (patchCount[x] == 1) {
+                columns[x] = singlePatch[x].pixels();
+                offsets[x] = singleOffset[x];
+            } else {
+                columns[x] = composite;
+                offsets[x] = next;
+                next += height;
+            }
+        }
+
+        for (int i = 0; i < texturePatches.length; i++) {
+            Graphic patch = graphics[i];
+            if (patch == null) {
+                continue;
+            }
+            TexturePatch p = texturePatches[i];
+            int x1 = Math.max(0, p.xOffset());
+            int x2 = Math.min(width, p.xOffset() + patch.width());
+            int y1 = Math.max(0, p.yOffset());
+            int y2 = Math.min(height, p.yOffset() + patch.height());
+            for (int x = x1; x < x2; x++) {
+                if (columns[x] != composite) {
+                    continue;
+                }
+                int px = x - p.xOffset();
+                for (int y = y1; y < y2; y++) {
+                    int py = y - p.yOffset();
+                    if (patch.isOpaque(px, py)) {
+                        composite[offsets[x] + y] = (byte) patch.getPixel(px, py);
+                    }
+                }
+            }
+        }
+        return new Entry(new WallTexture(texture.name(), width, height, columns, offsets), composite.length);
+    }
+
+    /**
+     * Textures found in the cache.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Textures composed, or read from the asset cache, because they were not in the cache.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Bytes of composed columns in the cache.
+     */
+    public synchronized long getCacheWeight() {
+        return weight;
+    }
+
+    // weight is the bytes composed for the texture, the shared patch columns are not counted
+    private record Entry(WallTexture texture, long weight) {
+    }
+
+    @FunctionalInterface
+    interface PatchSource {
+        Graphic find(String name) throws WadException;
+    }
+}
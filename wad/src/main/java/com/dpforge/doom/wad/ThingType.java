@@ -6,130 +6,155 @@ public enum ThingType {
     PLAYER_2_START(2),
     PLAYER_3_START(3),
     PLAYER_4_START(4),
-    BLUE_KEYCARD(5),
-    YELLOW_KEYCARD(6),
-    SPIDER_MASTERMIND(7),
-    BACKPACK(8),
-    SHOTGUN_GUY(9),
-    BLOODY_MESS(10),
+    BLUE_KEYCARD(5, "BKEYA"),
+    YELLOW_KEYCARD(6, "YKEYA"),
+    SPIDER_MASTERMIND(7, "SPIDA"),
+    BACKPACK(8, "BPAKA"),
+    SHOTGUN_GUY(9, "SPOSA"),
+    BLOODY_MESS(10, "PLAYW"),
     DEATHMATCH_START(11),
-    BLOODY_MESS2(12),
-    RED_KEYCARD(13),
+    BLOODY_MESS2(12, "PLAYW"),
+    RED_KEYCARD(13, "RKEYA"),
     TELEPORT_LANDING(14),
-    DEAD_PLAYER(15),
-    CYBERDEMON(16),
-    CELL_CHARGE_PACK(17),
-    DEAD_ZOMBIEMAN(18),
-    DEAD_SHOTGUN_GUY(19),
-    DEAD_IMP(20),
-    DEAD_DEMON(21),
-    DEAD_CACODEMON(22),
-    DEAD_LOST_SOUL__INVISIBLE(23),
-    POOL_OF_BLOOD_AND_FLESH(24),
-    IMPALED_HUMAN(25),
-    TWITCHING_IMPALED_HUMAN(26),
-    SKULL_ON_A_POLE(27),
-    FIVE_SKULLS_SHISH_KEBAB (28),
-    PILE_OF_SKULLS_AND_CANDLES(29),
-    TALL_GREEN_PILLAR(30),
-    SHORT_GREEN_PILLAR(31),
-    TALL_RED_PILLAR(32),
-    SHORT_RED_PILLAR(33),
-    CANDLE(34),
-    CANDELABRA(35),
-    SHORT_GREEN_PILLAR_WITH_BEATING_HEART(36),
-    SHORT_RED_PILLAR_WITH_SKULL(37),
-    RED_SKULL_KEY(38),
-    YELLOW_SKULL_KEY(39),
-    BLUE_SKULL_KEY(40),
-    EVIL_EYE(41),
-    FLOATING_SKULL(42),
-    BURNT_TREE(43),
-    TALL_BLUE_FIRESTICK(44),
-    TALL_GREEN_FIRESTICK(45),
-    TALL_RED_FIRESTICK(46),
-    STALAGMITE(47),
-    TALL_TECHNO_PILLAR(48),
-    HANGING_VICTIM__TWITCHING(49),
-    HANGING_VICTIM__ARMS_OUT(50),
-    HANGING_VICTIM__ONE_LEGGED(51),
-    HANGING_PAIR_OF_LEGS(52),
-    HANGING_LEG(53),
-    LARGE_BROWN_TREE(54),
-    SHORT_BLUE_FIRESTICK(55),
-    SHORT_GREEN_FIRESTICK(56),
-    SHORT_RED_FIRESTICK(57),
-    SPECTRE(58),
-    HANGING_VICTIM_ARMS_OUT(59),
-    HANGING_PAIR_OF_LEGS2(60),
-    HANGING_VICTIM_ONE_LEGGED(61),
-    HANGING_LEG2(62),
-    HANGING_VICTIM_TWITCHING(63),
-    ARCH_VILE(64),
-    HEAVY_WEAPON_DUDE(65),
-    REVENANT(66),
-    MANCUBUS(67),
-    ARACHNOTRON(68),
-    HELL_KNIGHT(69),
-    BURNING_BARREL(70),
-    PAIN_ELEMENTAL(71),
-    COMMANDER_KEEN(72),
-    HANGING_VICTIM__GUTS_REMOVED(73),
-    HANGING_VICTIM__GUTS_AND_BRAIN_REMOVED(74),
-    HANGING_TORSO__LOOKING_DOWN(75),
-    HANGING_TORSO__OPEN_SKULL(76),
-    HANGING_TORSO__LOOKING_UP(77),
-    HANGING_TORSO__BRAIN_REMOVED(78),
-    POOL_OF_BLOOD(79),
-    POOL_OF_BLOOD2(80),
-    POOL_OF_BRAINS(81),
-    SUPER_SHOTGUN(82),
-    MEGASPHERE(83),
-    WOLFENSTEIN_SS(84),
-    TALL_TECHNO_FLOOR_LAMP(85),
-    SHORT_TECHNO_FLOOR_LAMP(86),
+    DEAD_PLAYER(15, "PLAYN"),
+    CYBERDEMON(16, "CYBRA"),
+    CELL_CHARGE_PACK(17, "CELPA"),
+    DEAD_ZOMBIEMAN(18, "POSSL"),
+    DEAD_SHOTGUN_GUY(19, "SPOSL"),
+    DEAD_IMP(20, "TROOM"),
+    DEAD_DEMON(21, "SARGN"),
+    DEAD_CACODEMON(22, "HEADL"),
+    DEAD_LOST_SOUL__INVISIBLE(23, "SKULK"),
+    POOL_OF_BLOOD_AND_FLESH(24, "POL5A"),
+    IMPALED_HUMAN(25, "POL1A"),
+    TWITCHING_IMPALED_HUMAN(26, "POL6A"),
+    SKULL_ON_A_POLE(27, "POL4A"),
+    FIVE_SKULLS_SHISH_KEBAB(28, "POL2A"),
+    PILE_OF_SKULLS_AND_CANDLES(29, "POL3A", ThingType.BRIGHT),
+    TALL_GREEN_PILLAR(30, "COL1A"),
+    SHORT_GREEN_PILLAR(31, "COL2A"),
+    TALL_RED_PILLAR(32, "COL3A"),
+    SHORT_RED_PILLAR(33, "COL4A"),
+    CANDLE(34, "CANDA", ThingType.BRIGHT),
+    CANDELABRA(35, "CBRAA", ThingType.BRIGHT),
+    SHORT_GREEN_PILLAR_WITH_BEATING_HEART(36, "COL5A"),
+    SHORT_RED_PILLAR_WITH_SKULL(37, "COL6A"),
+    RED_SKULL_KEY(38, "RSKUA"),
+    YELLOW_SKULL_KEY(39, "YSKUA"),
+    BLUE_SKULL_KEY(40, "BSKUA"),
+    EVIL_EYE(41, "CEYEA", ThingType.BRIGHT),
+    FLOATING_SKULL(42, "FSKUA", ThingType.BRIGHT),
+    BURNT_TREE(43, "TRE1A"),
+    TALL_BLUE_FIRESTICK(44, "TBLUA", ThingType.BRIGHT),
+    TALL_GREEN_FIRESTICK(45, "TGRNA", ThingType.BRIGHT),
+    TALL_RED_FIRESTICK(46, "TREDA", ThingType.BRIGHT),
+    STALAGMITE(47, "SMITA"),
+    TALL_TECHNO_PILLAR(48, "ELECA"),
+    HANGING_VICTIM__TWITCHING(49, "GOR1A", ThingType.HANGING, 68),
+    HANGING_VICTIM__ARMS_OUT(50, "GOR2A", ThingType.HANGING, 84),
+    HANGING_VICTIM__ONE_LEGGED(51, "GOR3A", ThingType.HANGING, 84),
+    HANGING_PAIR_OF_LEGS(52, "GOR4A", ThingType.HANGING, 68),
+    HANGING_LEG(53, "GOR5A", ThingType.HANGING, 52),
+    LARGE_BROWN_TREE(54, "TRE2A"),
+    SHORT_BLUE_FIRESTICK(55, "SMBTA", ThingType.BRIGHT),
+    SHORT_GREEN_FIRESTICK(56, "SMGTA", ThingType.BRIGHT),
+    SHORT_RED_FIRESTICK(57, "SMRTA", ThingType.BRIGHT),
+    SPECTRE(58, "SARGA"),
+    HANGING_VICTIM_ARMS_OUT(59, "GOR2A", ThingType.HANGING, 84),
+    HANGING_PAIR_OF_LEGS2(60, "GOR4A", ThingType.HANGING, 68),
+    HANGING_VICTIM_ONE_LEGGED(61, "GOR3A", ThingType.HANGING, 52),
+    HANGING_LEG2(62, "GOR5A", ThingType.HANGING, 52),
+    HANGING_VICTIM_TWITCHING(63, "GOR1A", ThingType.HANGING, 68),
+    ARCH_VILE(64, "VILEA"),
+    HEAVY_WEAPON_DUDE(65, "CPOSA"),
+    REVENANT(66, "SKELA"),
+    MANCUBUS(67, "FATTA"),
+    ARACHNOTRON(68, "BSPIA"),
+    HELL_KNIGHT(69, "BOS2A"),
+    BURNING_BARREL(70, "FCANA", ThingType.BRIGHT),
+    PAIN_ELEMENTAL(71, "PAINA"),
+    COMMANDER_KEEN(72, "KEENA", ThingType.HANGING, 72),
+    HANGING_VICTIM__GUTS_REMOVED(73, "HDB1A", ThingType.HANGING, 88),
+    HANGING_VICTIM__GUTS_AND_BRAIN_REMOVED(74, "HDB2A", ThingType.HANGING, 88),
+    HANGING_TORSO__LOOKING_DOWN(75, "HDB3A", ThingType.HANGING, 64),
+    HANGING_TORSO__OPEN_SKULL(76, "HDB4A", ThingType.HANGING, 64),
+    HANGING_TORSO__LOOKING_UP(77, "HDB5A", ThingType.HANGING, 64),
+    HANGING_TORSO__BRAIN_REMOVED(78, "HDB6A", ThingType.HANGING, 64),
+    POOL_OF_BLOOD(79, "POB1A"),
+    POOL_OF_BLOOD2(80, "POB2A"),
+    POOL_OF_BRAINS(81, "BRS1A"),
+    SUPER_SHOTGUN(82, "SGN2A"),
+    MEGASPHERE(83, "MEGAA", ThingType.BRIGHT),
+    WOLFENSTEIN_SS(84, "SSWVA"),
+    TALL_TECHNO_FLOOR_LAMP(85, "TLMPA", ThingType.BRIGHT),
+    SHORT_TECHNO_FLOOR_LAMP(86, "TLP2A", ThingType.BRIGHT),
     SPAWN_SPOT(87),
-    BOSS_BRAIN(88),
+    BOSS_BRAIN(88, "BBRNA"),
     SPAWN_SHOOTER(89),
-    SHOTGUN(2001),
-    CHAINGUN(2002),
-    ROCKET_LAUNCHER(2003),
-    PLASMA_RIFLE(2004),
-    CHAINSAW(2005),
-    BFG_9000(2006),
-    AMMO_CLIP(2007),
-    SHOTGUN_SHELLS(2008),
-    ROCKET(2010),
-    STIMPACK(2011),
-    MEDIKIT(2012),
-    SOUL_SPHERE(2013),
-    HEALTH_POTION(2014),
-    SPIRITUAL_ARMOR(2015),
-    GREEN_ARMOR(2018),
-    BLUE_ARMOR(2019),
-    INVULNERABILITY(2022),
-    BERSERK(2023),
-    INVISIBILITY(2024),
-    RADIATION_SUIT(2025),
-    COMPUTER_MAP(2026),
-    FLOOR_LAMP(2028),
-    BARREL(2035),
-    LIGHT_AMPLIFICATION_VISOR(2045),
-    BOX_OF_ROCKETS(2046),
-    CELL_CHARGE(2047),
-    BOX_OF_AMMO(2048),
-    BOX_OF_SHELLS(2049),
-    IMP(3001),
-    DEMON(3002),
-    BARON_OF_HELL(3003),
-    ZOMBIEMAN(3004),
-    CACODEMON(3005),
-    LOST_SOUL(3006);
+    SHOTGUN(2001, "SHOTA"),
+    CHAINGUN(2002, "MGUNA"),
+    ROCKET_LAUNCHER(2003, "LAUNA"),
+    PLASMA_RIFLE(2004, "PLASA"),
+    CHAINSAW(2005, "CSAWA"),
+    BFG_9000(2006, "BFUGA"),
+    AMMO_CLIP(2007, "CLIPA"),
+    SHOTGUN_SHELLS(2008, "SHELA"),
+    ROCKET(2010, "ROCKA"),
+    STIMPACK(2011, "STIMA"),
+    MEDIKIT(2012, "MEDIA"),
+    SOUL_SPHERE(2013, "SOULA", ThingType.BRIGHT),
+    HEALTH_POTION(2014, "BON1A"),
+    SPIRITUAL_ARMOR(2015, "BON2A"),
+    GREEN_ARMOR(2018, "ARM1A"),
+    BLUE_ARMOR(2019, "ARM2A"),
+    INVULNERABILITY(2022, "PINVA", ThingType.BRIGHT),
+    BERSERK(2023, "PSTRA", ThingType.BRIGHT),
+    INVISIBILITY(2024, "PINSA", ThingType.BRIGHT),
+    RADIATION_SUIT(2025, "SUITA", ThingType.BRIGHT),
+    COMPUTER_MAP(2026, "PMAPA", ThingType.BRIGHT),
+    FLOOR_LAMP(2028, "COLUA", ThingType.BRIGHT),
+    BARREL(2035, "BAR1A"),
+    LIGHT_AMPLIFICATION_VISOR(2045, "PVISA", ThingType.BRIGHT),
+    BOX_OF_ROCKETS(2046, "BROKA"),
+    CELL_CHARGE(2047, "CELLA"),
+    BOX_OF_AMMO(2048, "AMMOA"),
+    BOX_OF_SHELLS(2049, "SBOXA"),
+    IMP(3001, "TROOA"),
+    DEMON(3002, "SARGA"),
+    BARON_OF_HELL(3003, "BOSSA"),
+    ZOMBIEMAN(3004, "POSSA"),
+    CACODEMON(3005, "HEADA"),
+    LOST_SOUL(3006, "SKULA", ThingType.BRIGHT);
+
+    // drawn at full brightness whatever the light around
+    static final int BRIGHT = 1;
+    // hangs from the ceiling instead of standing on the floor
+    static final int HANGING = 2;
 
     final int value;
+    // sprite name and frame of the thing as it is spawned, e.g. "TROOA", null for things that can't be seen
+    final String sprite;
+    final int flags;
+    // height in map units, see mobjinfo_t, only given for the things hanging from the ceiling
+    final int height;
 
     ThingType(int value) {
+        this(value, null, 0);
+    }
+
+    ThingType(int value, String sprite) {
+        this(value, sprite, 0);
+    }
+
+    ThingType(int value, String sprite, int flags) {
+        this(value, sprite, flags, 0);
+    }
+
+    ThingType(int value, String sprite, int flags, int height) {
         this.value = value;
+        this.sprite = sprite;
+        this.flags = flags;
+        this.height = height;
     }
 
     public static ThingType find(int value) throws WadException {
@@ -0,0 +1,122 @@
+package com.dpforge.doom.wad;
+
+import java.util.Arrays;
+
+/**
+ * Floor and ceiling areas of the current frame, see r_plane.c.
+ * <p>
+ * Planes come from a pool that is reset every frame and are looked up by flat, height and light level
+ * through a hash table, so the lookup neither allocates nor scans every plane.
+ */
+class VisPlanes {
+
+    // marks a column the plane doesn't cover
+    static final int UNUSED = Integer.MAX_VALUE;
+
+    private static final int HASH_SIZE = 128;
+
+    private final int width;
+    private VisPlane[] pool = new VisPlane[128];
+    private int count;
+    // first plane of each hash chain, -1 if the chain is empty
+    private final int[] hashHeads = new int[HASH_SIZE];
+
+    VisPlanes(int width) {
+        this.width = width;
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = new VisPlane(width);
+        }
+        clear();
+    }
+
+    void clear() {
+        count = 0;
+        Arrays.fill(hashHeads, -1);
+    }
+
+    int count() {
+        return count;
+    }
+
+    VisPlane get(int index) {
+        return pool[index];
+    }
+
+    /**
+     * Finds a plane with the same look that can take more columns, see R_FindPlane.
+     */
+    VisPlane find(int flat, int height, int light) {
+        int hash = hash(flat, height, light);
+        for (int i = hashHeads[hash]; i != -1; i = pool[i].next) {
+            VisPlane plane = pool[i];
+            if (plane.flat == flat && plane.height == height && plane.light == light) {
+                return plane;
+            }
+        }
+        return add(flat, height, light, width, -1);
+    }
+
+    /**
+     * Returns the plane if columns {@code start} to {@code stop} are still free in it,
+     * otherwise starts a new plane with the same look for them, see R_CheckPlane.
+     */
+    VisPlane check(VisPlane plane, int start, int stop) {
+        int intersectionLow = Math.max(start, plane.minX);
+        int intersectionHigh = Math.min(stop, plane.maxX);
+        int x = intersectionLow;
+        while (x <= intersectionHigh && plane.top[x + 1] == UNUSED) {
+            x++;
+        }
+        if (x > intersectionHigh) {
+            plane.minX = Math.min(start, plane.minX);
+            plane.maxX = Math.max(stop, plane.maxX);
+            return plane;
+        }
+        return add(plane.flat, plane.height, plane.light, start, stop);
+    }
+
+    private VisPlane add(int flat, int height, int light, int minX, int maxX) {
+        if (count == pool.length) {
+            pool = Arrays.copyOf(pool, pool.length * 2);
+            for (int i = count; i < pool.length; i++) {
+                pool[i] = new VisPlane(width);
+            }
+        }
+        VisPlane plane = pool[count];
+        plane.flat = flat;
+        plane.height = height;
+        plane.light = light;
+        plane.minX = minX;
+        plane.maxX = maxX;
+        Arrays.fill(plane.top, UNUSED);
+
+        int hash = hash(flat, height, light);
+        plane.next = hashHeads[hash];
+        hashHeads[hash] = count;
+        count++;
+        return plane;
+    }
+
+    private static int hash(int flat, int height, int light) {
+        return (flat * 3 + light + height * 7) & (HASH_SIZE - 1);
+    }
+
+    static final class VisPlane {
+        int flat;
+        int height;
+        int light;
+        int minX;
+        int maxX;
+        // next plane in the same hash chain
+        int next;
+
+        // rows covered in each column, shifted by one so there is an unused column on each side
+        final int[] top;
+        final int[] bottom;
+
+        private VisPlane(int width) {
+            top = new int[width + 2];
+            bottom = new int[width + 2];
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.dpforge.doom.wad;
+
+import java.util.Arrays;
+
+/**
+ * Sprites seen in the current frame, see vissprites in r_things.c.
+ * <p>
+ * Sprites come from a pool that is reset every frame and are sorted in place, so neither finding nor sorting them
+ * allocates once the pool has grown to the number of sprites in a busy frame.
+ */
+class VisSprites {
+
+    private VisSprite[] pool = new VisSprite[128];
+    private int count;
+
+    VisSprites() {
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = new VisSprite();
+        }
+    }
+
+    void clear() {
+        count = 0;
+    }
+
+    int count() {
+        return count;
+    }
+
+    VisSprite get(int index) {
+        return pool[index];
+    }
+
+    VisSprite add() {
+        if (count == pool.length) {
+            pool = Arrays.copyOf(pool, pool.length * 2);
+            for (int i = count; i < pool.length; i++) {
+                pool[i] = new VisSprite();
+            }
+        }
+        return pool[count++];
+    }
+
+    /**
+     * Sorts the sprites from the farthest to the nearest, so nearer sprites are drawn over farther ones.
+     * There are few sprites and they are mostly found in order by the front to back walk, so insertion sort does.
+     */
+    void sort() {
+        for (int i = 1; i < count; i++) {
+            VisSprite sprite = pool[i];
+            int j = i - 1;
+            while (j >= 0 && pool[j].scale > sprite.scale) {
+                pool[j + 1] = pool[j];
+                j--;
+            }
+            pool[j + 1] = sprite;
+        }
+    }
+
+    static final class VisSprite {
+        // columns covered on the screen
+        int x1;
+        int x2;
+        // position in the map, the bottom and the top heights
+        int gx;
+        int gy;
+        int gz;
+        int gzt;
+        // 16.16 fixed point
+        int scale;
+        // step through the patch columns per screen column, negative for mirrored sprites
+        int xiScale;
+        // patch column of the first screen column, 16.16 fixed point
+        int startFrac;
+        // height of the patch top relative to the eye, 16.16 fixed point
+        int textureMid;
+        Graphic patch;
+        int colorMap;
+
+        private VisSprite() {
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package com.dpforge.doom.wad;
 
-import java.awt.Color;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -10,10 +9,6 @@ import java.util.Stack;
 // https://doom.fandom.com/wiki/WAD
 public class WadFileReader {
 
-    private static final int PALETTE_COLOR_NUMBER = 256;
-    private static final int PALETTE_COLOR_SIZE = 3;
-    private static final int COLOR_MAP_SIZE = 256;
-
     private WadFile wad;
     private BinaryReader reader;
     private WadDirectory currentDir;
@@ -61,9 +56,12 @@ public class WadFileReader {
                     dirStack.push(parentDir);
                     parentDir.addDirectory(currentDir);
                 } else if (lumpName.endsWith("_END")) {
-                    currentDir = dirStack.pop();
+                    // PWADs may close a directory they didn't open, e.g. F_END to extend the flats
+                    if (!dirStack.isEmpty()) {
+                        currentDir = dirStack.pop();
+                    }
                 } else {
-                    throw new WadException("Unknown marker " + lumpName);
+                    System.out.println("Ignore marker " + lumpName);
                 }
                 continue;
             }
@@ -105,7 +103,11 @@ public class WadFileReader {
                         try {
                             readPicture(lumpName, lumpSize);
                         } catch (WadException e) {
-                            throw new WadException("Lump %s is not a sprite", lumpName);
+                            // PWADs carry lumps of their own, e.g. scripts, only the IWAD is known to have none
+                            if (wad.type != WadType.PWAD) {
+                                throw new WadException("Lump %s is not a sprite", lumpName);
+                            }
+                            System.out.println("Ignore lump " + lumpName);
                         }
                     }
                 }
@@ -115,25 +117,11 @@ public class WadFileReader {
     }
 
     private void readPlayPal(int size) {
-        int paletteCount = size / (PALETTE_COLOR_NUMBER * PALETTE_COLOR_SIZE);
-        wad.palettes = new Color[paletteCount][];
-        for (int paletteIndex = 0; paletteIndex < paletteCount; paletteIndex++) {
-            Color[] palette = wad.palettes[paletteIndex] = new Color[PALETTE_COLOR_NUMBER];
-            for (int colorIndex = 0; colorIndex < PALETTE_COLOR_NUMBER; colorIndex++) {
-                int r = reader.readInt8();
-                int g = reader.readInt8();
-                int b = reader.readInt8();
-                palette[colorIndex] = new Color(r, g, b);
-            }
-        }
+        wad.palettes = LumpDecoder.readPlayPal(reader, size);
     }
 
     private void readColorMap(int size) {
-        int mapCount = size / COLOR_MAP_SIZE;
-        wad.colorMaps = new byte[mapCount][];
-        for (int i = 0; i < mapCount; i++) {
-            wad.colorMaps[i] = reader.readBytes(COLOR_MAP_SIZE);
-        }
+        wad.colorMaps = LumpDecoder.readColorMap(reader, size);
     }
 
     private void readEndDoom(int size) throws WadException {
@@ -146,153 +134,43 @@ public class WadFileReader {
     }
 
     private void readThings(int size) throws WadException {
-        int thingCount = size / 10;
-        System.out.format("Reading %d THINGS for map %s\n", thingCount, currentMap.name);
-
-        currentMap.things = new Thing[thingCount];
-
-        for (int i = 0; i < thingCount; i++) {
-            int x = reader.readSignedInt16();
-            int y = reader.readSignedInt16();
-            int angle = reader.readInt16();
-            int type = reader.readInt16();
-            int flags = reader.readInt16();
-            currentMap.things[i] = new Thing(x, y, angle, ThingType.find(type), flags);
-        }
+        currentMap.things = LumpDecoder.readThings(reader, size);
+        System.out.format("Reading %d THINGS for map %s\n", currentMap.things.length, currentMap.name);
     }
 
     private void readLineDefs(int lumpSize) {
-        int lineDefCount = lumpSize / 14;
-        System.out.format("Reading %d LINEDEFS for map %s\n", lineDefCount, currentMap.name);
-
-        currentMap.lineDefs = new LineDef[lineDefCount];
-
-        for (int i = 0; i < lineDefCount; i++) {
-            int startVertex = reader.readInt16();
-            int endVertex = reader.readInt16();
-            int flags = reader.readInt16();
-            int specialType = reader.readInt16();
-            int sectorTag = reader.readInt16();
-            int rightSideDef = reader.readInt16();
-            int leftSideDef = reader.readInt16();
-            currentMap.lineDefs[i] = new LineDef(
-                    startVertex, endVertex, flags, specialType, sectorTag, rightSideDef, leftSideDef
-            );
-        }
+        currentMap.lineDefs = LumpDecoder.readLineDefs(reader, lumpSize);
+        System.out.format("Reading %d LINEDEFS for map %s\n", currentMap.lineDefs.length, currentMap.name);
     }
 
     private void readSideDefs(int lumpSize) {
-        int sideDefCount = lumpSize / 30;
-        System.out.format("Reading %d SIDEDEFS for map %s\n", sideDefCount, currentMap.name);
-
-        currentMap.sideDefs = new SideDef[sideDefCount];
-
-        for (int i = 0; i < sideDefCount; i++) {
-            int xOffset = reader.readInt16();
-            int yOffset = reader.readInt16();
-            String upperTexture = reader.readNullPaddedAsciiString(8);
-            String lowerTexture = reader.readNullPaddedAsciiString(8);
-            String middleTexture = reader.readNullPaddedAsciiString(8);
-            int facingSectorNumber = reader.readInt16();
-            currentMap.sideDefs[i] = new SideDef(
-                    xOffset, yOffset, upperTexture, lowerTexture, middleTexture, facingSectorNumber
-            );
-        }
+        currentMap.sideDefs = LumpDecoder.readSideDefs(reader, lumpSize);
+        System.out.format("Reading %d SIDEDEFS for map %s\n", currentMap.sideDefs.length, currentMap.name);
     }
 
     private void readVertexes(int lumpSize) {
-        int vertexCount = lumpSize / 4;
-        System.out.format("Reading %d VERTEXES for map %s\n", vertexCount, currentMap.name);
-
-        currentMap.vertexes = new Vertex[vertexCount];
-
-        for (int i = 0; i < vertexCount; i++) {
-            int x = reader.readSignedInt16();
-            int y = reader.readSignedInt16();
-            currentMap.vertexes[i] = new Vertex(x, y);
-        }
+        currentMap.vertexes = LumpDecoder.readVertexes(reader, lumpSize);
+        System.out.format("Reading %d VERTEXES for map %s\n", currentMap.vertexes.length, currentMap.name);
     }
 
     private void readSegs(int lumpSize) {
-        int segCount = lumpSize / 12;
-        System.out.format("Reading %d SEGS for map %s\n", segCount, currentMap.name);
-
-        currentMap.segs = new Seg[segCount];
-
-        for (int i = 0; i < segCount; i++) {
-            int startVertex = reader.readInt16();
-            int endVertex = reader.readInt16();
-            int angle = reader.readInt16();
-            int lineDef = reader.readInt16();
-            Seg.Direction direction = Seg.Direction.values()[reader.readInt16()];
-            int offset = reader.readInt16();
-            currentMap.segs[i] = new Seg(startVertex, endVertex, angle, lineDef, direction, offset);
-        }
+        currentMap.segs = LumpDecoder.readSegs(reader, lumpSize);
+        System.out.format("Reading %d SEGS for map %s\n", currentMap.segs.length, currentMap.name);
     }
 
     private void readSSector(int lumpSize) {
-        int ssectorCount = lumpSize / 4;
-        System.out.format("Reading %d SSECTORS for map %s\n", ssectorCount, currentMap.name);
-
-        currentMap.ssectors = new SSector[ssectorCount];
-
-        for (int i = 0; i < ssectorCount; i++) {
-            int segCount = reader.readInt16();
-            int firstSeg = reader.readInt16();
-            currentMap.ssectors[i] = new SSector(segCount, firstSeg);
-        }
+        currentMap.ssectors = LumpDecoder.readSSectors(reader, lumpSize);
+        System.out.format("Reading %d SSECTORS for map %s\n", currentMap.ssectors.length, currentMap.name);
     }
 
     private void readNodes(int lumpSize) {
-        int nodeCount = lumpSize / 28;
-        System.out.format("Reading %d NODES for map %s\n", nodeCount, currentMap.name);
-
-        currentMap.nodes = new Node[nodeCount];
-
-        for (int i = 0; i < nodeCount; i++) {
-            int partitionLineX = reader.readSignedInt16();
-            int partitionLineY = reader.readSignedInt16();
-            int partitionLineDX = reader.readSignedInt16();
-            int partitionLineDY = reader.readSignedInt16();
-            BBox rightBBox = readBBox();
-            BBox leftBBox = readBBox();
-            int rightChild = reader.readInt16();
-            int leftChild = reader.readInt16();
-            currentMap.nodes[i] = new Node(
-                    partitionLineX, partitionLineY,
-                    partitionLineDX, partitionLineDY,
-                    rightBBox, leftBBox,
-                    rightChild, leftChild
-            );
-        }
-    }
-
-    private BBox readBBox() {
-        int top = reader.readSignedInt16();
-        int bottom = reader.readSignedInt16();
-        int left = reader.readSignedInt16();
-        int right = reader.readSignedInt16();
-        return new BBox(top, bottom, left, right);
+        currentMap.nodes = LumpDecoder.readNodes(reader, lumpSize);
+        System.out.format("Reading %d NODES for map %s\n", currentMap.nodes.length, currentMap.name);
     }
 
     private void readSectors(int lumpSize) {
-        int sectorCount = lumpSize / 26;
-        System.out.format("Reading %d SECTORS for map %s\n", sectorCount, currentMap.name);
-
-        currentMap.sectors = new Sector[sectorCount];
-
-        for (int i = 0; i < sectorCount; i++) {
-            int floorHeight = reader.readInt16();
-            int ceilingHeight = reader.readInt16();
-            String floorTexture = reader.readNullPaddedAsciiString(8);
-            String ceilingTexture = reader.readNullPaddedAsciiString(8);
-            int lightLevel = reader.readInt16();
-            int type = reader.readInt16();
-            int tag = reader.readInt16();
-            currentMap.sectors[i] = new Sector(
-                    floorHeight, ceilingHeight, floorTexture, ceilingTexture, lightLevel, type, tag
-            );
-        }
+        currentMap.sectors = LumpDecoder.readSectors(reader, lumpSize);
+        System.out.format("Reading %d SECTORS for map %s\n", currentMap.sectors.length, currentMap.name);
     }
 
     private void readReject(int lumpSize) {
@@ -304,67 +182,16 @@ public class WadFileReader {
     }
 
     private void readTexture(int lumpSize) throws WadException {
-        int lumpStart = reader.getOffset();
-        int textureCount = reader.readInt32();
-        int[] textureOffsets = new int[textureCount];
-        for (int i = 0; i < textureCount; i++) {
-            textureOffsets[i] = reader.readInt32();
-        }
-
-        int headerEnd = reader.getOffset();
-        int totalCount = 0;
-
-        for (int i = 0; i < textureCount; i++) {
-            int textureStart = lumpStart + textureOffsets[i];
-            if (textureStart < headerEnd || textureStart >= lumpStart + lumpSize) {
-                throw new WadException("Texture is outside of lump");
-            }
-
-            reader.setOffset(textureStart);
-            Texture texture = readMapTexture();
-            int textureEnd = reader.getOffset();
-            totalCount += textureEnd - textureStart;
-
+        for (Texture texture : LumpDecoder.readTextures(reader, lumpSize)) {
             if (wad.textures.put(texture.name(), texture) != null) {
                 throw new WadException("Duplicate texture %s", texture.name());
             }
         }
-
-        if (totalCount > lumpSize) {
-            throw new WadException("Read more texture data (%d) than expected (%d)", totalCount, lumpSize);
-        }
-    }
-
-    private Texture readMapTexture() {
-        String name = reader.readNullPaddedAsciiString(8);
-        int masked = reader.readInt32();
-        int width = reader.readInt16();
-        int height = reader.readInt16();
-        reader.readInt32(); // column directory
-        int patchCount = reader.readInt16();
-        TexturePatch[] patches = new TexturePatch[patchCount];
-        for (int i = 0; i < patchCount; i++) {
-            patches[i] = readTexturePatch();
-        }
-        return new Texture(name, masked, width, height, patches);
-    }
-
-    private TexturePatch readTexturePatch() {
-        int xOffset = reader.readInt16();
-        int yOffset = reader.readInt16();
-        int patchNumber = reader.readInt16();
-        reader.readInt16(); // step dir
-        reader.readInt16(); // color map
-        return new TexturePatch(xOffset, yOffset, patchNumber);
     }
 
     private void readPNames(int lumpSize) {
         System.out.format("Reading PNAMES of size %d\n", lumpSize);
-        int patchCount = reader.readInt32();
-        wad.pnames = new String[patchCount];
-        for (int i = 0; i < patchCount; i++) {
-            wad.pnames[i] = reader.readNullPaddedAsciiString(8);
-        }
+        wad.pnames = LumpDecoder.readPNames(reader, lumpSize);
     }
 
     private void readGenMidi(int lumpSize) {
@@ -382,73 +209,20 @@ public class WadFileReader {
     private void readPicture(String lumpName, int lumpSize) throws WadException {
         System.out.format("Reading picture %s of size %d\n", lumpName, lumpSize);
 
-        int lumpStart = reader.getOffset();
-        int width = reader.readInt16();
-        int height = reader.readInt16();
-        int xOffset = reader.readSignedInt16();
-        int yOffset = reader.readSignedInt16();
-        int headerEnd = reader.getOffset();
-
-        var columnOffsets = new int[width];
-        for (int i = 0; i < width; i++) {
-            columnOffsets[i] = reader.readInt32();
-        }
-
-        var pixels = new Byte[height][width];
-        int totalCount = 0;
-
-        for (int i = 0; i < width; i++) {
-            int columnStart = lumpStart + columnOffsets[i];
-            if (columnStart < headerEnd || columnStart >= lumpStart + lumpSize) {
-                throw new WadException("Picture column is outside of lump");
-            }
-
-            reader.setOffset(columnStart);
-            readPictureColumn(i, pixels);
-            int columnEnd = reader.getOffset();
-            totalCount += columnEnd - columnStart;
-        }
-
-        if (totalCount > lumpSize) {
-            throw new WadException("Read more picture data (%d) than expected (%d)", totalCount, lumpSize);
-        }
-
-        Graphic graphic = new Graphic(width, height, xOffset, yOffset, pixels);
+        Graphic graphic = LumpDecoder.readPicture(reader, lumpSize);
         Graphic existing = currentDir.graphics.get(lumpName);
         if (existing == null) {
             currentDir.graphics.put(lumpName, graphic);
             return;
         }
-        if (!Arrays.deepEquals(graphic.pixels(), existing.pixels())) {
+        if (!graphic.contentEquals(existing)) {
             throw new WadException("Duplicate graphic %s", lumpName);
         }
         System.out.format("Skipping graphic %s\n", lumpName);
     }
 
-    private void readPictureColumn(int col, Byte[][] data) {
-        while (true) {
-            int rowStart = reader.readInt8();
-            if (rowStart == 0xFF) {
-                break;
-            }
-            int length = reader.readInt8();
-            reader.readInt8(); // padding
-            for (int i = 0; i < length; i++) {
-                data[rowStart + i][col] = (byte) reader.readInt8();
-            }
-            reader.readInt8(); // padding
-        }
-    }
-
     private void readFlat(String lumpName, int lumpSize) throws WadException {
-        if (lumpSize != 64 * 64) {
-            throw new WadException("Unexpected floor size: %d", lumpSize);
-        }
-        var pixels = new byte[64][];
-        for (int i = 0; i < 64; i++) {
-            pixels[i] = reader.readBytes(64);
-        }
-
+        byte[][] pixels = LumpDecoder.readFlat(reader, lumpSize);
         byte[][] existing = currentDir.flats.get(lumpName);
         if (existing == null) {
             currentDir.flats.put(lumpName, pixels);
@@ -460,7 +234,7 @@ public class WadFileReader {
         System.out.format("Skipping flat %s\n", lumpName);
     }
 
-    private static boolean isMapName(String lumpName) {
+    static boolean isMapName(String lumpName) {
         if (lumpName.length() == 4
                 && lumpName.charAt(0) == 'E'
                 && lumpName.charAt(2) == 'M'
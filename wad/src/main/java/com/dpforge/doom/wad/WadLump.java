@@ -0,0 +1,63 @@
+package com.dpforge.doom.wad;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Directory entry of a {@link MappedWadFile}. The lump data is decoded only when it is requested.
+ */
+public final class WadLump {
+
+    private final MappedWadFile wad;
+    private final int index;
+    private final String name;
+    private final int position;
+    private final int size;
+
+    WadLump(MappedWadFile wad, int index, String name, int position, int size) {
+        this.wad = wad;
+        this.index = index;
+        this.name = name;
+        this.position = position;
+        this.size = size;
+    }
+
+    public int index() {
+        return index;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    int position() {
+        return position;
+    }
+
+    MappedWadFile wad() {
+        return wad;
+    }
+
+    /**
+     * Raw lump bytes, a view of the mapped file without copying.
+     */
+    public ByteBuffer data() {
+        return wad.data().slice(position, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Decodes the lump or returns a cached result of a previous call with the same reader.
+     */
+    <T> T decode(LumpReader<T> reader) throws WadException {
+        return wad.decode(this, reader);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%d bytes)", name, size);
+    }
+}
@@ -0,0 +1,23 @@
+package com.dpforge.doom.wad;
+
+/**
+ * Wall texture palette indexes, column by column, see texturecolumnlump and texturecolumnofs in r_data.c.
+ * <p>
+ * Column x is found in {@code columns[x]} starting at {@code offsets[x]}. Columns covered by a single patch
+ * point into the pixels of that patch, the other columns point into a buffer composed from all their patches.
+ */
+public record WallTexture(
+        String name,
+        int width,
+        int height,
+        byte[][] columns,
+        int[] offsets
+) {
+
+    /**
+     * @return palette index of the pixel, 0 where no patch covers the texture
+     */
+    public int getPixel(int x, int y) {
+        return columns[x][offsets[x] + y] & 0xFF;
+    }
+}
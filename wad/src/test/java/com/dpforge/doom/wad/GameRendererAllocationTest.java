@@ -0,0 +1,117 @@
+package com.dpforge.doom.wad;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Once the pools of the renderer have grown, rendering a frame must not allocate, neither on the calling thread
+ * nor on the threads drawing the strips.
+ */
+class GameRendererAllocationTest {
+
+    private static final File WAD_FILE = new File("../doom-jfx/doom2.wad");
+    // the first rounds grow the pools and let the JIT settle
+    private static final int WARM_UP_ROUNDS = 2;
+    // the JVM links a code path the first time it runs, which allocates once, so a round may allocate
+    // when a rare branch shows up late, but an allocation of every frame fails all rounds
+    private static final int MEASURED_ROUNDS = 3;
+
+    private static final ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static WadFile wad;
+
+    @BeforeAll
+    static void readWad() throws Exception {
+        assumeTrue(WAD_FILE.exists(), "No WAD at " + WAD_FILE.getAbsolutePath());
+        wad = new WadFileReader().read(WAD_FILE);
+    }
+
+    @Test
+    void warmedUpFrameAllocatesNothing() throws Exception {
+        assertNoAllocation(1);
+    }
+
+    @Test
+    void warmedUpStripFrameAllocatesNothing() throws Exception {
+        assertNoAllocation(4);
+    }
+
+    private static void assertNoAllocation(int threads) throws Exception {
+        for (WadMap map : wad.maps.values()) {
+            Thing start = playerStart(map);
+            if (start == null) {
+                continue;
+            }
+            GameRenderer renderer = new GameRenderer(wad, map);
+            Set<Long> threadsBefore = threadIds();
+            renderer.setThreads(threads);
+            try {
+                for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+                    renderAround(renderer, start);
+                }
+                // threads started by the renderer are the workers of its pool
+                Set<Long> workerSet = threadIds();
+                workerSet.removeAll(threadsBefore);
+                long[] workers = workerSet.stream().mapToLong(Long::longValue).toArray();
+
+                long allocated = -1;
+                long workersAllocated = -1;
+                for (int round = 0; round < MEASURED_ROUNDS && (allocated != 0 || workersAllocated != 0); round++) {
+                    long workersBefore = allocatedBytes(workers);
+                    long before = threadBean.getCurrentThreadAllocatedBytes();
+                    renderAround(renderer, start);
+                    long after = threadBean.getCurrentThreadAllocatedBytes();
+                    long workersAfter = allocatedBytes(workers);
+                    allocated = after - before;
+                    workersAllocated = workersAfter - workersBefore;
+                }
+
+                assertEquals(0, allocated, map.name + " allocated on the rendering thread");
+                assertEquals(0, workersAllocated, map.name + " allocated on the strip threads");
+            } finally {
+                renderer.setThreads(1);
+            }
+        }
+    }
+
+    private static void renderAround(GameRenderer renderer, Thing start) {
+        for (int angle = 0; angle < 360; angle += 45) {
+            renderer.setCamera(start.x(), start.y(), start.angle() + angle);
+            renderer.render();
+        }
+    }
+
+    private static Thing playerStart(WadMap map) {
+        for (Thing thing : map.things) {
+            if (thing.type() == ThingType.PLAYER_1_START) {
+                return thing;
+            }
+        }
+        return null;
+    }
+
+    private static Set<Long> threadIds() {
+        Set<Long> ids = new HashSet<>();
+        for (long id : threadBean.getAllThreadIds()) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private static long allocatedBytes(long[] threadIds) {
+        long sum = 0;
+        for (long bytes : threadBean.getThreadAllocatedBytes(threadIds)) {
+            // -1 for a thread which has ended
+            sum += Math.max(0, bytes);
+        }
+        return sum;
+    }
+}